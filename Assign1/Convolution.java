@@ -0,0 +1,415 @@
+package poly;
+
+import java.util.Arrays;
+
+/**
+ * This class multiplies polynomials given as arrays of coefficients indexed by degree, by
+ * schoolbook multiplication, Karatsuba, floating point FFT, or number theoretic transforms (NTT)
+ * that are exact for integer coefficients.
+ *
+ * @author runb-cs112
+ *
+ */
+final class Convolution {
+
+	/**
+	 * Karatsuba multiplies blocks shorter than this the schoolbook way.
+	 */
+	static final int KARATSUBA_MIN = 32;
+
+	/**
+	 * Shortest product for which AUTO picks FFT or NTT over Karatsuba.
+	 */
+	static final int FFT_MIN = 2048;
+
+	/**
+	 * Longest transform the NTT primes allow, 998244353 - 1 being divisible by 2^23 and no higher power of 2.
+	 */
+	static final int NTT_MAX = 1 << 23;
+
+	/**
+	 * Primes of the form k*2^j + 1 with primitive root 3, for NTT. The product of their residues
+	 * is put back together with the Chinese remainder theorem.
+	 */
+	static final long[] PRIMES = {998244353, 167772161, 469762049};
+
+	static final long P01 = PRIMES[0] * PRIMES[1];
+
+	/**
+	 * Inverses of PRIMES[0] modulo PRIMES[1], and of P01 modulo PRIMES[2].
+	 */
+	static final long INV0 = pow(PRIMES[0] % PRIMES[1], PRIMES[1] - 2, PRIMES[1]);
+
+	static final long INV01 = pow(P01 % PRIMES[2], PRIMES[2] - 2, PRIMES[2]);
+
+	/**
+	 * Largest absolute value of a coefficient of the product that one, two or three primes can
+	 * tell apart, with room for rounding in the estimate of it.
+	 */
+	static final double[] NTT_BOUNDS = {(PRIMES[0] - 1) / 2 * 0.99, P01 / 2 * 0.99, Long.MAX_VALUE / 2 * 0.99};
+
+	private Convolution() {
+	}
+
+	/**
+	 * Picks a way to multiply two polynomials whose product is dense enough to keep in one array:
+	 * schoolbook if either has few terms or the terms are few enough for that to be less work than
+	 * Karatsuba, Karatsuba for short products, and otherwise NTT if the coefficients are integers
+	 * small enough for the product to be exact, FFT if not.
+	 *
+	 * @param ca Non-zero coefficients of one polynomial
+	 * @param cb Non-zero coefficients of the other
+	 * @param length Length of the product, its degree plus one
+	 * @return Method, not AUTO
+	 */
+	static Polynomial.Multiplication choose(double[] ca, double[] cb, int length) {
+		if (Math.min(ca.length, cb.length) < KARATSUBA_MIN
+				|| (double) ca.length * cb.length < Math.pow(length, 1.585)) {
+			return Polynomial.Multiplication.SCHOOLBOOK;
+		}//end if
+		if (length < FFT_MIN) {
+			return Polynomial.Multiplication.KARATSUBA;
+		}//end if
+		if (length <= NTT_MAX && primesNeeded(ca, cb) > 0) {
+			return Polynomial.Multiplication.NTT;
+		}//end if
+		return Polynomial.Multiplication.FFT;
+	}
+
+	/**
+	 * Multiplies two polynomials in the given way.
+	 *
+	 * @param a Coefficients of one polynomial, by degree
+	 * @param b Coefficients of the other, by degree
+	 * @param ca Non-zero coefficients of a, for the exactness check of NTT
+	 * @param cb Non-zero coefficients of b
+	 * @param method Method, not AUTO
+	 * @return Coefficients of the product, by degree
+	 * @throws IllegalArgumentException If the method is NTT and the coefficients are not integers
+	 *         or the product too large for it
+	 */
+	static double[] multiply(double[] a, double[] b, double[] ca, double[] cb, Polynomial.Multiplication method) {
+		switch (method) {
+		case KARATSUBA:
+			return karatsuba(a, b);
+		case FFT:
+			return fft(a, b);
+		case NTT:
+			int primes = primesNeeded(ca, cb);
+			if (primes == 0) {
+				throw new IllegalArgumentException("NTT needs integer coefficients whose products add up to less than 2^62");
+			}//end if
+			if (a.length + b.length - 1 > NTT_MAX) {
+				throw new IllegalArgumentException("NTT needs a product of degree less than " + NTT_MAX);
+			}//end if
+			return ntt(a, b, primes);
+		default:
+			return schoolbook(a, b);
+		}//end switch
+	}
+
+	/**
+	 * Multiplies coefficient by coefficient, skipping zeros of the first polynomial.
+	 */
+	static double[] schoolbook(double[] a, double[] b) {
+		double[] r = new double[a.length + b.length - 1];
+		for (int i = 0; i < a.length; i++) {
+			double coeff = a[i];
+			if (coeff != 0) {
+				for (int j = 0; j < b.length; j++) {
+					r[i + j] += coeff * b[j];
+				}//end for
+			}//end if
+		}//end for
+		return r;
+	}
+
+	/**
+	 * Multiplies by Karatsuba, cutting the longer polynomial into blocks as long as the shorter one.
+	 */
+	static double[] karatsuba(double[] a, double[] b) {
+		if (a.length < b.length) {
+			double[] t = a;
+			a = b;
+			b = t;
+		}//end if
+		int n = b.length;
+		int blocks = (a.length + n - 1) / n;
+		double[] r = new double[blocks * n + n - 1];
+		double[] block = new double[n];
+		for (int from = 0; from < a.length; from += n) {
+			int len = Math.min(n, a.length - from);
+			System.arraycopy(a, from, block, 0, len);
+			Arrays.fill(block, len, n, 0);
+			karatsuba(block, 0, b, 0, n, r, from);
+		}//end for
+		return Arrays.copyOf(r, a.length + n - 1);
+	}
+
+	/**
+	 * Adds the product of a[ao..ao+n-1] and b[bo..bo+n-1] into r[ro..ro+2n-2]. Splits each into a
+	 * low half x0 and a high half x1, and gets the middle of the product from one multiplication,
+	 * (a0+a1)(b0+b1) - a0b0 - a1b1, instead of two.
+	 */
+	private static void karatsuba(double[] a, int ao, double[] b, int bo, int n, double[] r, int ro) {
+		if (n < KARATSUBA_MIN) {
+			for (int i = 0; i < n; i++) {
+				double coeff = a[ao + i];
+				if (coeff != 0) {
+					for (int j = 0; j < n; j++) {
+						r[ro + i + j] += coeff * b[bo + j];
+					}//end for
+				}//end if
+			}//end for
+			return;
+		}//end if
+		int h = n / 2, hi = n - h;
+		double[] z0 = new double[2 * h - 1];
+		double[] z2 = new double[2 * hi - 1];
+		double[] z1 = new double[2 * hi - 1];
+		karatsuba(a, ao, b, bo, h, z0, 0);
+		karatsuba(a, ao + h, b, bo + h, hi, z2, 0);
+		double[] sa = new double[hi], sb = new double[hi];
+		for (int i = 0; i < hi; i++) {
+			sa[i] = a[ao + h + i] + (i < h ? a[ao + i] : 0);
+			sb[i] = b[bo + h + i] + (i < h ? b[bo + i] : 0);
+		}//end for
+		karatsuba(sa, 0, sb, 0, hi, z1, 0);
+		for (int i = 0; i < z0.length; i++) {
+			z1[i] -= z0[i];
+			r[ro + i] += z0[i];
+		}//end for
+		for (int i = 0; i < z2.length; i++) {
+			z1[i] -= z2[i];
+			r[ro + 2 * h + i] += z2[i];
+		}//end for
+		for (int i = 0; i < z1.length; i++) {
+			r[ro + h + i] += z1[i];
+		}//end for
+	}
+
+	/**
+	 * Multiplies by FFT. Both polynomials go into one complex transform, a as the real and b as
+	 * the imaginary part, and the transform of the product is picked out of it, so that it takes
+	 * one forward and one inverse transform.
+	 */
+	static double[] fft(double[] a, double[] b) {
+		int length = a.length + b.length - 1;
+		int size = Integer.highestOneBit(Math.max(length - 1, 1)) << 1;
+		double[] re = new double[size], im = new double[size];
+		System.arraycopy(a, 0, re, 0, a.length);
+		System.arraycopy(b, 0, im, 0, b.length);
+		double[] cos = new double[size / 2], sin = new double[size / 2];
+		for (int k = 0; k < size / 2; k++) {
+			double angle = 2 * Math.PI * k / size;
+			cos[k] = Math.cos(angle);
+			sin[k] = Math.sin(angle);
+		}//end for
+		transform(re, im, cos, sin, false);
+		//with C the transform of a + ib, that of the product is (C[k]^2 - conj(C[-k])^2) / 4i
+		double[] pr = new double[size], pi = new double[size];
+		for (int k = 0; k < size; k++) {
+			int j = (size - k) & (size - 1);
+			double x = re[k], y = im[k], u = re[j], v = -im[j];
+			double dr = x * x - y * y - (u * u - v * v);
+			double di = 2 * x * y - 2 * u * v;
+			pr[k] = di / 4;
+			pi[k] = -dr / 4;
+		}//end for
+		transform(pr, pi, cos, sin, true);
+		double[] r = new double[length];
+		for (int i = 0; i < length; i++) {
+			r[i] = pr[i] / size;
+		}//end for
+		return r;
+	}
+
+	/**
+	 * Transforms in place, iterative radix 2, the length a power of 2. The inverse is not scaled.
+	 */
+	private static void transform(double[] re, double[] im, double[] cos, double[] sin, boolean inverse) {
+		int n = re.length;
+		reverseBits(re, im, null);
+		for (int len = 2; len <= n; len <<= 1) {
+			int half = len >> 1, step = n / len;
+			for (int i = 0; i < n; i += len) {
+				for (int k = 0; k < half; k++) {
+					double wr = cos[k * step], wi = inverse ? sin[k * step] : -sin[k * step];
+					int p = i + k, q = p + half;
+					double xr = re[q] * wr - im[q] * wi;
+					double xi = re[q] * wi + im[q] * wr;
+					re[q] = re[p] - xr;
+					im[q] = im[p] - xi;
+					re[p] += xr;
+					im[p] += xi;
+				}//end for
+			}//end for
+		}//end for
+	}
+
+	/**
+	 * Permutes arrays into bit-reversed index order, the first step of an iterative transform.
+	 * Either the two double arrays or the long one are given.
+	 */
+	private static void reverseBits(double[] re, double[] im, long[] a) {
+		int n = a == null ? re.length : a.length;
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}//end for
+			j ^= bit;
+			if (i < j) {
+				if (a == null) {
+					double t = re[i];
+					re[i] = re[j];
+					re[j] = t;
+					t = im[i];
+					im[i] = im[j];
+					im[j] = t;
+				}//end if
+				else {
+					long t = a[i];
+					a[i] = a[j];
+					a[j] = t;
+				}//end else
+			}//end if
+		}//end for
+	}
+
+	/**
+	 * Returns how many of the NTT primes it takes to multiply exactly: 0 if a coefficient is not an
+	 * integer, or the coefficients of the product could exceed 2^62, which is as far as three primes
+	 * are put back together here.
+	 */
+	static int primesNeeded(double[] ca, double[] cb) {
+		double maxA = maxIntegral(ca), maxB = maxIntegral(cb);
+		if (maxA < 0 || maxB < 0) {
+			return 0;
+		}//end if
+		double bound = maxA * maxB * Math.min(ca.length, cb.length);
+		for (int primes = 1; primes <= PRIMES.length; primes++) {
+			if (bound <= NTT_BOUNDS[primes - 1]) {
+				return primes;
+			}//end if
+		}//end for
+		return 0;
+	}
+
+	/**
+	 * Returns the largest absolute value of the coefficients, -1 if one is not an integer below 2^53.
+	 */
+	private static double maxIntegral(double[] c) {
+		double max = 0;
+		for (int i = 0; i < c.length; i++) {
+			double abs = Math.abs(c[i]);
+			if (abs >= 0x1p53 || abs != Math.rint(abs)) {
+				return -1;
+			}//end if
+			max = Math.max(max, abs);
+		}//end for
+		return max;
+	}
+
+	/**
+	 * Multiplies integer coefficients exactly, modulo each of the given number of primes, and puts
+	 * the residues back together with the Chinese remainder theorem (Garner's method).
+	 */
+	static double[] ntt(double[] a, double[] b, int primes) {
+		int length = a.length + b.length - 1;
+		int size = Integer.highestOneBit(Math.max(length - 1, 1)) << 1;
+		long[][] residues = new long[primes][];
+		for (int t = 0; t < primes; t++) {
+			long p = PRIMES[t];
+			long[] fa = reduce(a, p, size), fb = reduce(b, p, size);
+			transform(fa, p, false);
+			transform(fb, p, false);
+			for (int i = 0; i < size; i++) {
+				fa[i] = fa[i] * fb[i] % p;
+			}//end for
+			transform(fa, p, true);
+			residues[t] = fa;
+		}//end for
+		double[] r = new double[length];
+		long p0 = PRIMES[0], p1 = PRIMES[1], p2 = PRIMES[2];
+		for (int i = 0; i < length; i++) {
+			long x = residues[0][i];
+			if (primes == 1) {
+				r[i] = x > p0 / 2 ? x - p0 : x;
+				continue;
+			}//end if
+			//x + p0 * t is the residue modulo p0 * p1
+			x += p0 * ((residues[1][i] - x % p1 + p1) % p1 * INV0 % p1);
+			if (primes == 2) {
+				r[i] = x > P01 / 2 ? x - P01 : x;
+				continue;
+			}//end if
+			long t = (residues[2][i] - x % p2 + p2) % p2 * INV01 % p2;
+			//the product is below 2^62 in absolute value, so t is near 0 if it is positive and near p2 if not
+			r[i] = t < p2 / 2 ? x + P01 * t : x + P01 * (t - p2);
+		}//end for
+		return r;
+	}
+
+	/**
+	 * Returns integer coefficients modulo p, padded with zeros to size.
+	 */
+	private static long[] reduce(double[] c, long p, int size) {
+		long[] r = new long[size];
+		for (int i = 0; i < c.length; i++) {
+			long v = (long) c[i] % p;
+			r[i] = v < 0 ? v + p : v;
+		}//end for
+		return r;
+	}
+
+	/**
+	 * Number theoretic transform in place modulo p, iterative radix 2, the length a power of 2
+	 * dividing p - 1. The inverse is scaled by 1/length.
+	 */
+	private static void transform(long[] a, long p, boolean inverse) {
+		int n = a.length;
+		reverseBits(null, null, a);
+		long[] w = new long[Math.max(n / 2, 1)];
+		for (int len = 2; len <= n; len <<= 1) {
+			long root = pow(3, (p - 1) / len, p);
+			if (inverse) {
+				root = pow(root, p - 2, p);
+			}//end if
+			int half = len >> 1;
+			w[0] = 1;
+			for (int k = 1; k < half; k++) {
+				w[k] = w[k - 1] * root % p;
+			}//end for
+			for (int i = 0; i < n; i += len) {
+				for (int k = 0; k < half; k++) {
+					int q = i + k + half;
+					long u = a[i + k], v = a[q] * w[k] % p;
+					a[i + k] = u + v < p ? u + v : u + v - p;
+					a[q] = u - v >= 0 ? u - v : u - v + p;
+				}//end for
+			}//end for
+		}//end for
+		if (inverse) {
+			long scale = pow(n, p - 2, p);
+			for (int i = 0; i < n; i++) {
+				a[i] = a[i] * scale % p;
+			}//end for
+		}//end if
+	}
+
+	/**
+	 * Returns base^exponent modulo p, p below 2^31.
+	 */
+	static long pow(long base, long exponent, long p) {
+		long result = 1;
+		base %= p;
+		for (; exponent > 0; exponent >>= 1) {
+			if ((exponent & 1) != 0) {
+				result = result * base % p;
+			}//end if
+			base = base * base % p;
+		}//end for
+		return result;
+	}
+}
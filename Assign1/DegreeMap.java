@@ -0,0 +1,104 @@
+package poly;
+
+/**
+ * This class adds up coefficients by degree, in an open-addressing map from long degree to double
+ * coefficient with linear probing, for multiplying polynomials too sparse to add up in an array.
+ * Adding is one probe on average, with no objects made per term.
+ *
+ * @author runb-cs112
+ *
+ */
+final class DegreeMap {
+
+	/**
+	 * Marks an empty entry, not a degree any product can have.
+	 */
+	static final long EMPTY = Long.MIN_VALUE;
+
+	long[] keys;
+
+	double[] values;
+
+	/**
+	 * Number of degrees in the map.
+	 */
+	int size;
+
+	/**
+	 * Initializes an empty map.
+	 *
+	 * @param expected Number of degrees expected, the map grows past it if need be
+	 */
+	DegreeMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+		keys = new long[capacity];
+		values = new double[capacity];
+		java.util.Arrays.fill(keys, EMPTY);
+	}
+
+	private static int spread(long degree) {
+		long h = degree * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Adds a coefficient to the one of a degree.
+	 *
+	 * @param degree Degree
+	 * @param coeff Coefficient to add
+	 */
+	void add(long degree, double coeff) {
+		int mask = keys.length - 1;
+		int e = spread(degree) & mask;
+		while (keys[e] != EMPTY) {
+			if (keys[e] == degree) {
+				values[e] += coeff;
+				return;
+			}//end if
+			e = (e + 1) & mask;
+		}//end while
+		keys[e] = degree;
+		values[e] = coeff;
+		if (++size * 2 > keys.length) {
+			grow();
+		}//end if
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		double[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new double[oldKeys.length * 2];
+		java.util.Arrays.fill(keys, EMPTY);
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int e = spread(oldKeys[i]) & mask;
+				while (keys[e] != EMPTY) {
+					e = (e + 1) & mask;
+				}//end while
+				keys[e] = oldKeys[i];
+				values[e] = oldValues[i];
+			}//end if
+		}//end for
+	}
+
+	/**
+	 * Copies the degrees and coefficients out, in no particular order, dropping zero coefficients.
+	 * The degrees must fit in an int.
+	 *
+	 * @param d Degrees, at least size long
+	 * @param c Coefficients, at least size long
+	 * @return Number of terms copied
+	 */
+	int drain(int[] d, double[] c) {
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY && values[i] != 0) {
+				d[n] = (int) keys[i];
+				c[n++] = values[i];
+			}//end if
+		}//end for
+		return n;
+	}
+}
@@ -0,0 +1,134 @@
+package poly;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class evaluates polynomials at many points by Horner's rule, eight points to a pass over
+ * the coefficients. Large batches of points are split into chunks evaluated in parallel.
+ *
+ * @author runb-cs112
+ *
+ */
+final class Multipoint {
+
+	/**
+	 * Batches of more than this many points are split into chunks evaluated in parallel.
+	 */
+	static final int PARALLEL_POINTS = 1 << 13;
+
+	private Multipoint() {
+	}
+
+	/**
+	 * Evaluates coefficients indexed by degree at x by Horner's rule.
+	 *
+	 * @param c Coefficients
+	 * @param x Value of x
+	 * @return Value of the polynomial at x
+	 */
+	static double horner(double[] c, double x) {
+		double y = 0;
+		for (int i = c.length - 1; i >= 0; i--) {
+			y = y * x + c[i];
+		}//end for
+		return y;
+	}
+
+	/**
+	 * Evaluates terms at x by Horner's rule, multiplying by a power of x across gaps in the degrees.
+	 *
+	 * @param d Degrees, in ascending order
+	 * @param c Coefficients
+	 * @param x Value of x
+	 * @return Value of the polynomial at x
+	 */
+	static double horner(int[] d, double[] c, double x) {
+		int n = d.length;
+		if (n == 0) {
+			return 0;
+		}//end if
+		double y = c[n - 1];
+		for (int i = n - 2; i >= 0; i--) {
+			int gap = d[i + 1] - d[i];
+			y = y * (gap == 1 ? x : Math.pow(x, gap)) + c[i];
+		}//end for
+		return d[0] == 0 ? y : y * Math.pow(x, d[0]);
+	}
+
+	/**
+	 * Evaluates a polynomial stored dense or sparse at xs[from..to-1] into ys, by Horner's rule.
+	 * Dense coefficients are run through once for every eight points, which keeps eight
+	 * independent multiply-adds in flight instead of one chain of them.
+	 */
+	static void horner(Polynomial p, double[] xs, double[] ys, int from, int to) {
+		if (p.dense == null) {
+			for (int i = from; i < to; i++) {
+				ys[i] = horner(p.degrees, p.coeffs, xs[i]);
+			}//end for
+			return;
+		}//end if
+		double[] c = p.dense;
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			double x0 = xs[i], x1 = xs[i + 1], x2 = xs[i + 2], x3 = xs[i + 3];
+			double x4 = xs[i + 4], x5 = xs[i + 5], x6 = xs[i + 6], x7 = xs[i + 7];
+			double y0 = 0, y1 = 0, y2 = 0, y3 = 0, y4 = 0, y5 = 0, y6 = 0, y7 = 0;
+			for (int k = c.length - 1; k >= 0; k--) {
+				double coeff = c[k];
+				y0 = y0 * x0 + coeff;
+				y1 = y1 * x1 + coeff;
+				y2 = y2 * x2 + coeff;
+				y3 = y3 * x3 + coeff;
+				y4 = y4 * x4 + coeff;
+				y5 = y5 * x5 + coeff;
+				y6 = y6 * x6 + coeff;
+				y7 = y7 * x7 + coeff;
+			}//end for
+			ys[i] = y0;
+			ys[i + 1] = y1;
+			ys[i + 2] = y2;
+			ys[i + 3] = y3;
+			ys[i + 4] = y4;
+			ys[i + 5] = y5;
+			ys[i + 6] = y6;
+			ys[i + 7] = y7;
+		}//end for
+		for (; i < to; i++) {
+			ys[i] = horner(c, xs[i]);
+		}//end for
+	}
+
+	/**
+	 * Evaluates a range of points, splitting it in half until it is at most PARALLEL_POINTS long.
+	 */
+	static final class Chunk extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Polynomial p;
+
+		private final double[] xs, ys;
+
+		private final int from, to;
+
+		/**
+		 * @param p Polynomial, stored dense or sparse
+		 */
+		Chunk(Polynomial p, double[] xs, double[] ys, int from, int to) {
+			this.p = p;
+			this.xs = xs;
+			this.ys = ys;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= PARALLEL_POINTS) {
+				horner(p, xs, ys, from, to);
+				return;
+			}//end if
+			int mid = (from + to) >>> 1;
+			invokeAll(new Chunk(p, xs, ys, from, mid), new Chunk(p, xs, ys, mid, to));
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package poly;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.StringTokenizer;
 
 /**
@@ -96,10 +97,52 @@ class Node {
 public class Polynomial {
 	
 	/**
-	 * Pointer to the front of the linked list that stores the polynomial. 
-	 */ 
+	 * Polynomials of up to this many terms are stored in the linked list, larger ones in arrays.
+	 */
+	static final int LIST_TERMS = 32;
+
+	/**
+	 * Polynomials in arrays are stored dense if their degree is less than this many times their
+	 * number of terms, i.e. if at least half of the coefficients up to the degree are not zero.
+	 * Otherwise they are stored sparse.
+	 */
+	static final int DENSE_SPREAD = 2;
+
+	/**
+	 * Ways multiply can multiply polynomials.
+	 */
+	public enum Multiplication {
+		/** Picks one by the number of terms, the degree and the coefficients */
+		AUTO,
+		/** Every term by every term, O(n*m), added up in an array, or in a hash map by degree for products too sparse for one */
+		SCHOOLBOOK,
+		/** Karatsuba's divide and conquer on the coefficient arrays, O(n^1.59) */
+		KARATSUBA,
+		/** Convolution by floating point FFT, O(n log n), with rounding errors relative to the largest coefficients */
+		FFT,
+		/** Convolution by number theoretic transforms modulo up to three primes, O(n log n), exact for integer coefficients */
+		NTT
+	}
+
+	/**
+	 * Pointer to the front of the linked list that stores the polynomial.
+	 */
 	Node poly;
-	
+
+	/**
+	 * Coefficients indexed by degree, if this polynomial is stored dense, null otherwise.
+	 * The last coefficient is not zero.
+	 */
+	double[] dense;
+
+	/**
+	 * Degrees in ascending order and their coefficients, none zero, if this polynomial is
+	 * stored sparse, null otherwise.
+	 */
+	int[] degrees;
+
+	double[] coeffs;
+
 	/** 
 	 * Initializes this polynomial to empty, i.e. there are no terms.
 	 *
@@ -139,13 +182,222 @@ public class Polynomial {
 		int degree;
 		
 		poly = null;
-		
+		int[] d = new int[LIST_TERMS];
+		double[] c = new double[LIST_TERMS];
+		int n = 0;
+
 		while ((line = br.readLine()) != null) {
 			tokenizer = new StringTokenizer(line);
 			coeff = Float.parseFloat(tokenizer.nextToken());
 			degree = Integer.parseInt(tokenizer.nextToken());
-			poly = new Node(coeff, degree, poly);
+			if (n < LIST_TERMS) {
+				poly = new Node(coeff, degree, poly);
+			}//end if
+			if (n == d.length) {
+				d = Arrays.copyOf(d, n * 2);
+				c = Arrays.copyOf(c, n * 2);
+			}//end if
+			d[n] = degree;
+			c[n] = coeff;
+			n++;
 		}
+		if (n > LIST_TERMS) {
+			poly = null;
+			store(d, c, normalize(d, c, n));
+		}//end if
+	}
+
+	/**
+	 * Returns a polynomial with the given terms, stored in the linked list, dense or sparse
+	 * depending on their number and density.
+	 *
+	 * @param d Degrees, in ascending order
+	 * @param c Coefficients, none zero
+	 * @param n Number of terms, at the front of the arrays
+	 * @return Polynomial, which may keep the arrays
+	 */
+	static Polynomial of(int[] d, double[] c, int n) {
+		Polynomial result = new Polynomial();
+		result.store(d, c, n);
+		return result;
+	}
+
+	/**
+	 * Returns a polynomial with the given coefficients, stored in the linked list, dense or sparse
+	 * depending on their number and density.
+	 *
+	 * @param r Coefficients indexed by degree, some may be zero
+	 * @return Polynomial, which may keep the array
+	 */
+	static Polynomial ofDense(double[] r) {
+		int n = 0, top = -1;
+		for (int i = 0; i < r.length; i++) {
+			if (r[i] != 0) {
+				n++;
+				top = i;
+			}//end if
+		}//end for
+		Polynomial result = new Polynomial();
+		if (n > LIST_TERMS && top < (long) DENSE_SPREAD * n) {
+			result.dense = top == r.length - 1 ? r : Arrays.copyOf(r, top + 1);
+			return result;
+		}//end if
+		int[] d = new int[n];
+		double[] c = new double[n];
+		n = 0;
+		for (int i = 0; i <= top; i++) {
+			if (r[i] != 0) {
+				d[n] = i;
+				c[n++] = r[i];
+			}//end if
+		}//end for
+		result.store(d, c, n);
+		return result;
+	}
+
+	/**
+	 * Stores the given terms in this empty polynomial: in the linked list if there are at most
+	 * LIST_TERMS, else dense if the degree is less than DENSE_SPREAD times their number, else sparse.
+	 */
+	private void store(int[] d, double[] c, int n) {
+		if (n <= LIST_TERMS) {
+			for (int i = n - 1; i >= 0; i--) {
+				poly = new Node((float) c[i], d[i], poly);
+			}//end for
+		}//end if
+		else if (d[0] >= 0 && d[n - 1] < (long) DENSE_SPREAD * n) {
+			dense = new double[d[n - 1] + 1];
+			for (int i = 0; i < n; i++) {
+				dense[d[i]] = c[i];
+			}//end for
+		}//end if
+		else {
+			degrees = d.length == n ? d : Arrays.copyOf(d, n);
+			coeffs = c.length == n ? c : Arrays.copyOf(c, n);
+		}//end else
+	}
+
+	/**
+	 * Sorts terms by ascending degree, adds up terms of the same degree, and drops zero coefficients.
+	 *
+	 * @param d Degrees
+	 * @param c Coefficients
+	 * @param n Number of terms, at the front of the arrays
+	 * @return Number of terms left, at the front of the arrays
+	 */
+	static int normalize(int[] d, double[] c, int n) {
+		boolean ascending = true, descending = true;
+		for (int i = 1; i < n; i++) {
+			ascending &= d[i - 1] < d[i];
+			descending &= d[i - 1] > d[i];
+		}//end for
+		if (descending && !ascending) {
+			for (int i = 0, j = n - 1; i < j; i++, j--) {
+				int degree = d[i];
+				d[i] = d[j];
+				d[j] = degree;
+				double coeff = c[i];
+				c[i] = c[j];
+				c[j] = coeff;
+			}//end for
+		}//end if
+		else if (!ascending) {
+			//sort by degree, with the index in the low half of the key to carry the coefficient along
+			long[] keys = new long[n];
+			for (int i = 0; i < n; i++) {
+				keys[i] = ((long) d[i] << 32) | i;
+			}//end for
+			Arrays.sort(keys);
+			double[] sorted = new double[n];
+			for (int i = 0; i < n; i++) {
+				d[i] = (int) (keys[i] >> 32);
+				sorted[i] = c[(int) keys[i]];
+			}//end for
+			System.arraycopy(sorted, 0, c, 0, n);
+		}//end else
+		int k = 0;
+		for (int i = 0; i < n; ) {
+			int degree = d[i];
+			double coeff = 0;
+			for (; i < n && d[i] == degree; i++) {
+				coeff += c[i];
+			}//end for
+			if (coeff != 0) {
+				d[k] = degree;
+				c[k++] = coeff;
+			}//end if
+		}//end for
+		return k;
+	}
+
+	/**
+	 * Returns whether this polynomial is stored in the linked list, which includes the empty polynomial.
+	 */
+	boolean isList() {
+		return dense == null && degrees == null;
+	}
+
+	/**
+	 * Returns whether this polynomial has no terms.
+	 */
+	boolean isEmpty() {
+		return poly == null && isList();
+	}
+
+	/**
+	 * Returns the number of terms of this polynomial, zero coefficients of a dense one not counted.
+	 */
+	int size() {
+		int n = 0;
+		if (dense != null) {
+			for (int i = 0; i < dense.length; i++) {
+				if (dense[i] != 0) {
+					n++;
+				}//end if
+			}//end for
+		}//end if
+		else if (degrees != null) {
+			n = degrees.length;
+		}//end if
+		else {
+			for (Node curr = poly; curr != null; curr = curr.next) {
+				n++;
+			}//end for
+		}//end else
+		return n;
+	}
+
+	/**
+	 * Returns this polynomial if it is stored sparse, otherwise a copy of its terms stored sparse,
+	 * for merging term by term.
+	 */
+	Polynomial sparse() {
+		if (degrees != null) {
+			return this;
+		}//end if
+		int n = size();
+		int[] d = new int[n];
+		double[] c = new double[n];
+		n = 0;
+		if (dense != null) {
+			for (int i = 0; i < dense.length; i++) {
+				if (dense[i] != 0) {
+					d[n] = i;
+					c[n++] = dense[i];
+				}//end if
+			}//end for
+		}//end if
+		else {
+			for (Node curr = poly; curr != null; curr = curr.next) {
+				d[n] = curr.term.degree;
+				c[n++] = curr.term.coeff;
+			}//end for
+			n = normalize(d, c, n);
+		}//end else
+		Polynomial result = new Polynomial();
+		result.degrees = n == d.length ? d : Arrays.copyOf(d, n);
+		result.coeffs = n == c.length ? c : Arrays.copyOf(c, n);
+		return result;
 	}
 	
 	
@@ -157,12 +409,15 @@ public class Polynomial {
 	 * @return A new polynomial which is the sum of this polynomial and p.
 	 */
 	public Polynomial add(Polynomial p) {
-		if(poly == null || p.poly == null) {
+		if(isEmpty() || p.isEmpty()) {
 			System.out.println("Empty polynomial");
 			Polynomial nullPoly = new Polynomial();
 			nullPoly.poly = new Node (0, 0, null);
 			return nullPoly;
 		} //Null pointer exception
+		if (!isList() || !p.isList()) {
+			return addArrays(p);
+		}//end if
 		
 		Node curr = poly;
 		Node polyCurr = p.poly;
@@ -271,99 +526,183 @@ public class Polynomial {
 	 * @return A new polynomial which is the product of this polynomial and p.
 	 */
 	public Polynomial multiply(Polynomial p) {
-		if(poly == null || p.poly == null) {
+		return multiply(p, Multiplication.AUTO);
+	}
+	
+	/**
+	 * Returns the polynomial obtained by multiplying the given polynomial p
+	 * with this polynomial, in the given way - DOES NOT change this polynomial
+	 * 
+	 * @param p Polynomial with which this polynomial is to be multiplied
+	 * @param method How to multiply, AUTO to pick by the size and coefficients of the polynomials.
+	 *        AUTO multiplies term by term unless both polynomials are dense. Any other method is
+	 *        used as asked, on coefficient arrays as long as the product, except SCHOOLBOOK, which
+	 *        adds up the products of sparse polynomials by degree in a hash map instead.
+	 * @return A new polynomial which is the product of this polynomial and p.
+	 * @throws IllegalArgumentException If a degree of the product does not fit in an int, if the
+	 *         method is KARATSUBA, FFT or NTT and a degree is negative or the product too long for
+	 *         an array, or if the method is NTT and the coefficients are not integers or the product
+	 *         too large for it
+	 */
+	public Polynomial multiply(Polynomial p, Multiplication method) {
+		if(isEmpty() || p.isEmpty()) {
 			System.out.println("Empty polynomial");
 			Polynomial nullPoly = new Polynomial();
 			nullPoly.poly = new Node (0, 0, null);
 			return nullPoly;
 		} //Null pointer exception
 		
-		Node curr = poly;
-		Node polyCurr = p.poly;
-		
-		float currCoeff; 
-		int currDeg;
-
-		/* Set two nodes that have values to work with.
-		 * I also have another idea of having 3 different nodes, setting one of them equal to null.
-		 * 
-		 * I feel as though working this way may be slightly easier to use, however, by doing that, I may not be able to 
-		 * find the correct solution. Therefore, I will work on that method after this assignment is turned in.
-		 */
-		
-		Node temp = null;
-		Polynomial pTemp = new Polynomial();
-		Polynomial pSum = new Polynomial();
-		//These are the values that will be changed by inputs, and used in the following while loop
+		Polynomial a = sparse(), b = p.sparse();
+		int n = a.degrees.length, m = b.degrees.length;
+		if (n == 0 || m == 0) {
+			return new Polynomial();
+		}//end if
+		long top = (long) a.degrees[n - 1] + b.degrees[m - 1];
+		boolean inRange = a.degrees[0] >= 0 && b.degrees[0] >= 0 && top < Integer.MAX_VALUE - 8;
+		//coefficient arrays only for operands dense enough that they take about as much room as their terms
+		boolean denseOperands = inRange
+				&& a.degrees[n - 1] < (long) DENSE_SPREAD * n && b.degrees[m - 1] < (long) DENSE_SPREAD * m;
+		if (method == Multiplication.AUTO) {
+			method = denseOperands ? Convolution.choose(a.coeffs, b.coeffs, (int) top + 1) : Multiplication.SCHOOLBOOK;
+		}//end if
+		else if (method != Multiplication.SCHOOLBOOK && !inRange) {
+			throw new IllegalArgumentException(method + " needs degrees of at least 0 and a product of degree less than "
+					+ (Integer.MAX_VALUE - 8) + ", not " + Math.min(a.degrees[0], b.degrees[0]) + " to " + top);
+		}//end else if
+		if (method != Multiplication.SCHOOLBOOK || denseOperands) {
+			return ofDense(Convolution.multiply(toDense(), p.toDense(), a.coeffs, b.coeffs, method));
+		}//end if
 		
-		while(curr != null) {
+		//otherwise products are added up by degree in a hash map, then sorted
+		if (top > Integer.MAX_VALUE || (long) a.degrees[0] + b.degrees[0] < Integer.MIN_VALUE) {
+			throw new IllegalArgumentException("Degrees of the product out of int range, up to " + top);
+		}//end if
+		DegreeMap sums = new DegreeMap(Math.max(n, m) * 2);
+		for (int i = 0; i < n; i++) {
+			long degree = a.degrees[i];
+			double coeff = a.coeffs[i];
+			for (int j = 0; j < m; j++) {
+				sums.add(degree + b.degrees[j], coeff * b.coeffs[j]);
+			}//end for
+		}//end for
+		int[] d = new int[sums.size];
+		double[] c = new double[sums.size];
+		int k = sums.drain(d, c);
+		return of(d, c, normalize(d, c, k));
+	}
 	
-			while(polyCurr != null) {
-				currCoeff = curr.term.coeff * polyCurr.term.coeff;
-				currDeg = curr.term.degree + polyCurr.term.degree;
-				//This will use the input polynomial and multiply it with the next polynomial the user inputs
-				temp = new Node(currCoeff, currDeg, temp);
-				//Set a new temp node that houses the values of the multiplied coeff/degs
-				polyCurr = polyCurr.next;
-				//make polyCurr go to the next value in the node
-			}//end polyCurr while
-			/* While this mathematically does work, the polynomial will print in reverse order.
-			 * To fix that, I'll add another while loop.
-			 * NOTE THIS IS  THE SAME AS THE LOOP IN THE "ADD" METHOD.
-			 */
-			
-			Node order = temp;
-			Node orderTemp = null;
-			
-			while(order != null) {
-				if(order.term.coeff == 0) {
-					order = order.next;
+	/**
+	 * Returns the coefficients of this polynomial indexed by degree, the array itself if it is
+	 * stored dense. Degrees must not be negative.
+	 */
+	double[] toDense() {
+		if (dense != null) {
+			return dense;
+		}//end if
+		Polynomial terms = sparse();
+		int n = terms.degrees.length;
+		double[] r = new double[n == 0 ? 0 : terms.degrees[n - 1] + 1];
+		for (int i = 0; i < n; i++) {
+			r[terms.degrees[i]] = terms.coeffs[i];
+		}//end for
+		return r;
+	}
+	
+	/**
+	 * Adds p to this polynomial when either is stored in arrays: coefficient by coefficient into
+	 * one array if the sum is dense enough, otherwise by merging the terms of the two.
+	 */
+	private Polynomial addArrays(Polynomial p) {
+		if (dense != null && p.dense != null) {
+			double[] big = dense.length >= p.dense.length ? dense : p.dense;
+			double[] small = big == dense ? p.dense : dense;
+			double[] r = big.clone();
+			for (int i = 0; i < small.length; i++) {
+				r[i] += small[i];
+			}//end for
+			return ofDense(r);
+		}//end if
+		Polynomial a = sparse(), b = p.sparse();
+		int n = a.degrees.length, m = b.degrees.length;
+		if (n == 0 || m == 0) {
+			return n == 0 ? of(b.degrees, b.coeffs, m) : of(a.degrees, a.coeffs, n);
+		}//end if
+		int top = Math.max(a.degrees[n - 1], b.degrees[m - 1]);
+		if (a.degrees[0] >= 0 && b.degrees[0] >= 0 && top < (long) DENSE_SPREAD * (n + m)) {
+			double[] r = new double[top + 1];
+			for (int i = 0; i < n; i++) {
+				r[a.degrees[i]] += a.coeffs[i];
+			}//end for
+			for (int j = 0; j < m; j++) {
+				r[b.degrees[j]] += b.coeffs[j];
+			}//end for
+			return ofDense(r);
+		}//end if
+		int[] d = new int[n + m];
+		double[] c = new double[n + m];
+		int i = 0, j = 0, k = 0;
+		while (i < n && j < m) {
+			if (a.degrees[i] < b.degrees[j]) {
+				d[k] = a.degrees[i];
+				c[k++] = a.coeffs[i++];
+			}//end if
+			else if (a.degrees[i] > b.degrees[j]) {
+				d[k] = b.degrees[j];
+				c[k++] = b.coeffs[j++];
+			}//end if
+			else {
+				double coeff = a.coeffs[i] + b.coeffs[j];
+				if (coeff != 0) {
+					d[k] = a.degrees[i];
+					c[k++] = coeff;
 				}//end if
-				else {
-					orderTemp = new Node(order.term.coeff, order.term.degree, orderTemp);
-					order = order.next;
-				}//end else
-				
-			}//end order while
-			//This while loop will correctly order every value in the polynomial
-			
-			pTemp.poly = orderTemp;
-			pSum = pSum.add(pTemp);
-			
-			curr = curr.next;
-			polyCurr = p.poly;
-			temp = null;
-			
-		}//end curr while
-		return pSum;
+				i++;
+				j++;
+			}//end else
+		}//end while
+		for (; i < n; i++, k++) {
+			d[k] = a.degrees[i];
+			c[k] = a.coeffs[i];
+		}//end for
+		for (; j < m; j++, k++) {
+			d[k] = b.degrees[j];
+			c[k] = b.coeffs[j];
+		}//end for
+		return of(d, c, k);
 	}
 	
 	/**
-	 * Evaluates this polynomial at the given value of x
+	 * Evaluates this polynomial at the given value of x, by Horner's rule
 	 * 
 	 * @param x Value at which this polynomial is to be evaluated
 	 * @return Value of this polynomial at x
 	 */
 	public float evaluate(float x) {
-		float y = 0;
-		Node curr = poly;
-		//Two values to work with.
-		
-		while(curr != null) {
-			y = y + curr.term.coeff * (float) Math.pow(x, curr.term.degree);
-			/* When trying to write this line, I was getting an error if i didn't concat the value
-			 * derived from the "Math" statement into a (float)
-			 */
-			curr = curr.next;
-		} 
-		/* This while loop will solve for the value of the input.
-		 * The statement uses the "MATH" class which we learned about last year. I used the pow method.
-		 * 
-		 * The first issue was with a double being returned, but by concatenating it to a float, it will compile.
-		 * It will solve for y until it reaches the end of the problem, and y is returned. 
-		 */
-		
-		return y;
+		if (dense != null) {
+			return (float) Multipoint.horner(dense, x);
+		}//end if
+		Polynomial terms = sparse();
+		return (float) Multipoint.horner(terms.degrees, terms.coeffs, x);
+	}
+	
+	/**
+	 * Evaluates this polynomial at each of the given values of x, by Horner's rule. Dense
+	 * polynomials are evaluated at eight points per pass over the coefficients, and batches of
+	 * more than Multipoint.PARALLEL_POINTS are split into chunks evaluated in parallel.
+	 * 
+	 * @param xs Values at which this polynomial is to be evaluated
+	 * @return Values of this polynomial, in the order of xs
+	 */
+	public double[] evaluate(double[] xs) {
+		double[] ys = new double[xs.length];
+		Polynomial terms = dense != null ? this : sparse();
+		if (xs.length > Multipoint.PARALLEL_POINTS) {
+			new Multipoint.Chunk(terms, xs, ys, 0, xs.length).invoke();
+		}//end if
+		else {
+			Multipoint.horner(terms, xs, ys, 0, xs.length);
+		}//end else
+		return ys;
 	}
 	
 	/* (non-Javadoc)
@@ -372,7 +711,17 @@ public class Polynomial {
 	public String toString() {
 		String retval;
 		
-		if (poly == null) {
+		if (!isList()) {
+			Polynomial terms = sparse();
+			StringBuilder sb = new StringBuilder();
+			for (int i = terms.degrees.length - 1; i >= 0; i--) {
+				sb.append(new Term((float) terms.coeffs[i], terms.degrees[i]));
+				if (i > 0) {
+					sb.append(" + ");
+				}//end if
+			}//end for
+			return sb.toString();
+		} else if (poly == null) {
 			return "0";
 		} else {
 			retval = poly.term.toString();
@@ -0,0 +1,324 @@
+package apps;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class holds the values of an array symbol, by index, in one of three backings:
+ * <ul>
+ * <li>Dense, an int[] on the heap, which is what ArraySymbol.values holds.</li>
+ * <li>Sparse, an open-addressing map from index to value, for arrays that are declared far longer
+ *     than the number of (index,val) pairs given for them. Indexes with no value read as zero.</li>
+ * <li>Mapped, ints in a memory-mapped file, for arrays too long to keep on the heap.</li>
+ * </ul>
+ * Loading picks the backing by the declared length and the number of values: arrays up to
+ * HEAP_LIMIT long are dense, longer ones start sparse and move to a mapped file if more than a
+ * quarter of their indexes get values, at which point a dense backing takes less room.
+ *
+ * @author runb-cs112
+ *
+ */
+public abstract class ArrayValues {
+
+	/**
+	 * Longest array kept as an int[] on the heap, set with the expression.heapArrayLimit system
+	 * property, 2^24 by default.
+	 */
+	static final int HEAP_LIMIT = Integer.getInteger("expression.heapArrayLimit", 1 << 24);
+
+	/**
+	 * Declared length of the array.
+	 */
+	final int length;
+
+	ArrayValues(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * Returns the declared length of the array.
+	 *
+	 * @return Length
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Returns the value at an index.
+	 *
+	 * @param index Index
+	 * @return Value, zero if none was set
+	 * @throws ArrayIndexOutOfBoundsException If the index is not in 0..length-1
+	 */
+	public abstract int get(int index);
+
+	/**
+	 * Sets the value at an index.
+	 *
+	 * @param index Index
+	 * @param value Value
+	 * @throws ArrayIndexOutOfBoundsException If the index is not in 0..length-1
+	 */
+	public abstract void set(int index, int value);
+
+	/**
+	 * Returns the int[] behind a dense backing, so that callers can index it directly.
+	 *
+	 * @return The values, or null if the backing is not dense
+	 */
+	int[] dense() {
+		return null;
+	}
+
+	/**
+	 * Returns the best backing for the values set so far, once loading is done. A sparse backing
+	 * holding values at more than a quarter of its indexes is copied to a mapped one.
+	 *
+	 * @return This, or a copy in a better backing
+	 * @throws IOException If a mapped file can not be made
+	 */
+	ArrayValues settle() throws IOException {
+		return this;
+	}
+
+	/**
+	 * Returns a dense backing over an int[]. The array is not copied.
+	 *
+	 * @param values Values, by index
+	 * @return Dense backing
+	 */
+	public static ArrayValues of(int[] values) {
+		return new Dense(values);
+	}
+
+	/**
+	 * Returns a sparse backing with no values set.
+	 *
+	 * @param length Declared length
+	 * @return Sparse backing
+	 */
+	public static ArrayValues sparse(int length) {
+		return new Sparse(length, 16);
+	}
+
+	/**
+	 * Maps a file of big-endian ints, the value at index i in bytes 4i to 4i+3, as a dense backing.
+	 * The file is made, or grown, to hold length ints. Values set are written through to the file.
+	 *
+	 * @param file File
+	 * @param length Declared length
+	 * @return Mapped backing
+	 * @throws IOException If the file can not be mapped
+	 */
+	public static ArrayValues map(Path file, int length) throws IOException {
+		return new Mapped(file, length);
+	}
+
+	/**
+	 * Returns an empty backing for an array about to be loaded.
+	 *
+	 * @param length Declared length
+	 * @param count Number of values to be loaded, or -1 if not known
+	 * @return Dense backing up to HEAP_LIMIT, otherwise mapped if count is more than a quarter of length, otherwise sparse
+	 * @throws IOException If a mapped file can not be made
+	 */
+	static ArrayValues allocate(int length, int count) throws IOException {
+		if (length <= HEAP_LIMIT) {
+			return new Dense(new int[length]);
+		}//end if
+		if (count > length / 4) {
+			return mapTemporary(length);
+		}//end if
+		return new Sparse(length, count == -1 ? 16 : count);
+	}
+
+	private static ArrayValues mapTemporary(int length) throws IOException {
+		Path file = Files.createTempFile("expression", ".ints");
+		try {
+			return new Mapped(file, length);
+		} finally {
+			//the mapping outlives the name, and the disk space is given back once it is unmapped,
+			//so a reload does not leave the last file behind
+			try {
+				Files.delete(file);
+			} catch (IOException e) {
+				//systems that can not delete a mapped file
+				file.toFile().deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * An int[] on the heap.
+	 */
+	static final class Dense extends ArrayValues {
+
+		final int[] values;
+
+		Dense(int[] values) {
+			super(values.length);
+			this.values = values;
+		}
+
+		public int get(int index) {
+			return values[index];
+		}
+
+		public void set(int index, int value) {
+			values[index] = value;
+		}
+
+		int[] dense() {
+			return values;
+		}
+
+		public String toString() {
+			return java.util.Arrays.toString(values);
+		}
+	}
+
+	/**
+	 * An open-addressing map from index to value, with linear probing. Keys are stored as index+1,
+	 * so that 0 marks an empty entry.
+	 */
+	static final class Sparse extends ArrayValues {
+
+		int[] keys;
+
+		int[] values;
+
+		/**
+		 * Number of indexes with a value.
+		 */
+		int size;
+
+		Sparse(int length, int expected) {
+			super(length);
+			int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+			keys = new int[capacity];
+			values = new int[capacity];
+		}
+
+		private static int spread(int index) {
+			int h = index * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		public int get(int index) {
+			if (index < 0 || index >= length) {
+				throw new ArrayIndexOutOfBoundsException(index);
+			}//end if
+			int mask = keys.length - 1;
+			for (int e = spread(index) & mask; keys[e] != 0; e = (e + 1) & mask) {
+				if (keys[e] == index + 1) {
+					return values[e];
+				}//end if
+			}//end for
+			return 0;
+		}
+
+		public void set(int index, int value) {
+			if (index < 0 || index >= length) {
+				throw new ArrayIndexOutOfBoundsException(index);
+			}//end if
+			int mask = keys.length - 1;
+			int e = spread(index) & mask;
+			while (keys[e] != 0) {
+				if (keys[e] == index + 1) {
+					values[e] = value;
+					return;
+				}//end if
+				e = (e + 1) & mask;
+			}//end while
+			keys[e] = index + 1;
+			values[e] = value;
+			if (++size * 2 > keys.length) {
+				grow();
+			}//end if
+		}
+
+		private void grow() {
+			int[] oldKeys = keys, oldValues = values;
+			keys = new int[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					int e = spread(oldKeys[i] - 1) & mask;
+					while (keys[e] != 0) {
+						e = (e + 1) & mask;
+					}//end while
+					keys[e] = oldKeys[i];
+					values[e] = oldValues[i];
+				}//end if
+			}//end for
+		}
+
+		ArrayValues settle() throws IOException {
+			if (size <= length / 4) {
+				return this;
+			}//end if
+			ArrayValues dense = length <= HEAP_LIMIT ? new Dense(new int[length]) : mapTemporary(length);
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != 0) {
+					dense.set(keys[i] - 1, values[i]);
+				}//end if
+			}//end for
+			return dense;
+		}
+
+		public String toString() {
+			return size + " of " + length + " set";
+		}
+	}
+
+	/**
+	 * Ints in a memory-mapped file, big-endian, mapped in segments of 2^28 ints since one mapping
+	 * can not be larger than 2GB.
+	 */
+	static final class Mapped extends ArrayValues {
+
+		static final int SEGMENT_SHIFT = 28;
+
+		static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+		final IntBuffer[] segments;
+
+		Mapped(Path file, int length) throws IOException {
+			super(length);
+			segments = new IntBuffer[(int) (((long) length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				for (int s = 0; s < segments.length; s++) {
+					long from = (long) s << SEGMENT_SHIFT;
+					long ints = Math.min(length - from, 1L << SEGMENT_SHIFT);
+					//the mapping stays valid after the channel is closed
+					segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, from * 4, ints * 4).asIntBuffer();
+				}//end for
+			}//end try
+		}
+
+		public int get(int index) {
+			if (index < 0 || index >= length) {
+				throw new ArrayIndexOutOfBoundsException(index);
+			}//end if
+			return segments[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+		}
+
+		public void set(int index, int value) {
+			if (index < 0 || index >= length) {
+				throw new ArrayIndexOutOfBoundsException(index);
+			}//end if
+			segments[index >>> SEGMENT_SHIFT].put(index & SEGMENT_MASK, value);
+		}
+
+		public String toString() {
+			return length + " mapped";
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package apps;
+
+import java.util.ArrayList;
+
+/**
+ * This class holds the state of one batch evaluation: the bindings, the columns of scalar values
+ * that vary by row, and a stack of scratch buffers for intermediate results. Nodes evaluate a
+ * whole chunk of rows at a time into a buffer, so the inner loops are plain primitive loops over
+ * arrays that the JIT can unroll and vectorize.
+ * A frame is used by one thread at a time.
+ * 
+ * @author runb-cs112
+ *
+ */
+class BatchFrame {
+	
+	/**
+	 * Number of rows evaluated at a time. Small enough that the scratch buffers stay in cache.
+	 */
+	static final int CHUNK = 1024;
+	
+	/**
+	 * Values of the symbols that do not vary by row.
+	 */
+	final Bindings bindings;
+	
+	/**
+	 * Values of the scalar symbols by slot and row, null for a scalar that takes its value from the bindings.
+	 */
+	final int[][] columns;
+	
+	/**
+	 * Slot of the scalar whose value in each row is the row number, -1 if there is none.
+	 */
+	final int indexSlot;
+	
+	/**
+	 * Values of the common subexpressions for the current chunk, CHUNK floats each.
+	 */
+	final float[][] temps;
+	
+	/**
+	 * Scratch buffers, CHUNK floats each. Buffers below top are in use.
+	 */
+	private final ArrayList<float[]> scratch = new ArrayList<float[]>();
+	
+	private int top;
+	
+	BatchFrame(Bindings bindings, int[][] columns, int indexSlot, int tempCount) {
+		this.bindings = bindings;
+		this.columns = columns;
+		this.indexSlot = indexSlot;
+		temps = new float[tempCount][CHUNK];
+	}
+	
+	/**
+	 * Takes a scratch buffer off the stack.
+	 * 
+	 * @return Buffer of CHUNK floats
+	 */
+	float[] push() {
+		if (top == scratch.size()) {
+			scratch.add(new float[CHUNK]);
+		}//end if
+		return scratch.get(top++);
+	}
+	
+	/**
+	 * Gives back the last buffer taken.
+	 */
+	void pop() {
+		top--;
+	}
+}
@@ -0,0 +1,154 @@
+package apps;
+
+import java.math.BigDecimal;
+
+/**
+ * This class holds the values of the symbols of a compiled expression, by slot. A compiled
+ * expression never changes, all the values it is evaluated with come from a Bindings, so any
+ * number of threads can evaluate the same compiled expression at once, each with its own Bindings.
+ * A Bindings is cheap to make and can be reused from one evaluation to the next, but must not be
+ * used by two threads at the same time.
+ * 
+ * @author runb-cs112
+ *
+ */
+public class Bindings {
+	
+	/**
+	 * Slots of the symbols, for setting values by name.
+	 */
+	final SymbolTable symbols;
+	
+	/**
+	 * Values of the scalar symbols, by slot.
+	 */
+	int[] scalars;
+	
+	/**
+	 * Values of the array symbols, by slot.
+	 */
+	ArrayValues[] arrays;
+	
+	/**
+	 * Values of the common subexpressions, set at the start of each evaluation. Only the
+	 * array for the mode the expression was compiled for is made, the others are empty.
+	 */
+	float[] temps;
+	
+	double[] doubleTemps;
+	
+	long[] longTemps;
+	
+	BigDecimal[] exactTemps;
+	
+	/**
+	 * Initializes bindings for the symbols of a compiled expression, with all scalars
+	 * zero and no array values.
+	 * 
+	 * @param symbols Slots of the symbols
+	 * @param tempCount Number of common subexpressions
+	 * @param mode Mode the expression was compiled for
+	 */
+	Bindings(SymbolTable symbols, int tempCount, EvalMode mode) {
+		this.symbols = symbols;
+		scalars = new int[symbols.scalarCount()];
+		arrays = new ArrayValues[symbols.arrayCount()];
+		temps = new float[mode == EvalMode.FLOAT ? tempCount : 0];
+		doubleTemps = new double[mode == EvalMode.DOUBLE ? tempCount : 0];
+		longTemps = new long[mode == EvalMode.LONG ? tempCount : 0];
+		exactTemps = new BigDecimal[mode == EvalMode.EXACT ? tempCount : 0];
+	}
+	
+	/**
+	 * Sets the value of a scalar symbol.
+	 * 
+	 * @param slot Slot of the symbol, from CompiledExpression.scalarSlot
+	 * @param value Value
+	 * @return These bindings
+	 */
+	public Bindings setScalar(int slot, int value) {
+		scalars[slot] = value;
+		return this;
+	}
+	
+	/**
+	 * Sets the value of a scalar symbol by name. Setting by slot is faster.
+	 * 
+	 * @param name Name of the symbol
+	 * @param value Value
+	 * @return These bindings
+	 * @throws IllegalArgumentException If there is no such scalar symbol
+	 */
+	public Bindings setScalar(String name, int value) {
+		return setScalar(slot(symbols.scalarSlot(name), name), value);
+	}
+	
+	/**
+	 * Sets the values of an array symbol. The array is not copied.
+	 * 
+	 * @param slot Slot of the symbol, from CompiledExpression.arraySlot
+	 * @param values Values, by index
+	 * @return These bindings
+	 */
+	public Bindings setArray(int slot, int[] values) {
+		return setArray(slot, ArrayValues.of(values));
+	}
+	
+	/**
+	 * Sets the values of an array symbol, in any backing.
+	 * 
+	 * @param slot Slot of the symbol, from CompiledExpression.arraySlot
+	 * @param values Values, by index
+	 * @return These bindings
+	 */
+	public Bindings setArray(int slot, ArrayValues values) {
+		arrays[slot] = values;
+		return this;
+	}
+	
+	/**
+	 * Sets the values of an array symbol by name. The array is not copied.
+	 * 
+	 * @param name Name of the symbol
+	 * @param values Values, by index
+	 * @return These bindings
+	 * @throws IllegalArgumentException If there is no such array symbol
+	 */
+	public Bindings setArray(String name, int[] values) {
+		return setArray(slot(symbols.arraySlot(name), name), values);
+	}
+	
+	/**
+	 * Sets the values of an array symbol by name, in any backing.
+	 * 
+	 * @param name Name of the symbol
+	 * @param values Values, by index
+	 * @return These bindings
+	 * @throws IllegalArgumentException If there is no such array symbol
+	 */
+	public Bindings setArray(String name, ArrayValues values) {
+		return setArray(slot(symbols.arraySlot(name), name), values);
+	}
+	
+	/**
+	 * Sets all scalars back to zero and drops all array values.
+	 * 
+	 * @return These bindings
+	 */
+	public Bindings clear() {
+		for (int i = 0; i < scalars.length; i++) {
+			scalars[i] = 0;
+		}//end for
+		for (int i = 0; i < arrays.length; i++) {
+			arrays[i] = null;
+		}//end for
+		return this;
+	}
+	
+	private static int slot(int slot, String name) {
+		if (slot == -1) {
+			throw new IllegalArgumentException("No symbol " + name);
+		}//end if
+		return slot;
+	}
+}
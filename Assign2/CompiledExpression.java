@@ -0,0 +1,419 @@
+package apps;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class holds an expression compiled once into a tree, so that it can be evaluated any number
+ * of times, with new symbol values each time, without being parsed again. A compiled expression
+ * is immutable: symbol values are passed in a Bindings, by slot. So it can be shared by any number
+ * of threads, each evaluating it with its own Bindings, without copying or locking:
+ * <pre>
+ *     CompiledExpression program = CompiledExpression.compile("a*b + A[i]");
+ *     int a = program.scalarSlot("a"), b = program.scalarSlot("b"), i = program.scalarSlot("i");
+ *     ...
+ *     // on any thread
+ *     Bindings bindings = program.localBindings();
+ *     bindings.setScalar(a, 3).setScalar(b, 4).setScalar(i, 1).setArray("A", values);
+ *     float result = program.evaluate(bindings);
+ * </pre>
+ * <p>
+ * Evaluation starts out walking the tree. After jitThreshold evaluations the tree is compiled into
+ * a composed method handle (see ExprJit), which the JVM can inline, and every later evaluation
+ * goes through the handle instead. Both give exactly the same results.
+ * <p>
+ * Unless turned off, the tree is optimized first (see ExprOptimizer): constants are folded and
+ * repeated subexpressions are computed once per evaluation, into temporaries.
+ * <p>
+ * An expression is compiled for one arithmetic (see EvalMode), float unless another is asked for,
+ * and is evaluated with the evaluate method for that mode: evaluate, evaluateDouble, evaluateLong 
+ * or evaluateExact. Only float expressions have batch evaluation and the method handle tier, the
+ * others are always evaluated by walking the tree.
+ * 
+ * @author runb-cs112
+ *
+ */
+public class CompiledExpression {
+	
+	/**
+	 * Root of the expression tree.
+	 */
+	final ExprNode root;
+	
+	/**
+	 * Definitions of the temporaries the tree refers to, computed in this order at the start
+	 * of each evaluation.
+	 */
+	final ExprNode[] temps;
+	
+	/**
+	 * Slots of the symbols. Not changed after compiling.
+	 */
+	final SymbolTable symbols;
+	
+	/**
+	 * Arithmetic the expression is compiled for.
+	 */
+	final EvalMode mode;
+	
+	/**
+	 * Default number of tree-walk evaluations after which the expression is compiled into a
+	 * method handle. Set with the expression.jitThreshold system property.
+	 */
+	static final int DEFAULT_JIT_THRESHOLD = Integer.getInteger("expression.jitThreshold", 10000);
+	
+	/**
+	 * Number of tree-walk evaluations after which the expression is compiled into a method handle,
+	 * 0 to compile right away, negative to never compile.
+	 */
+	final int jitThreshold;
+	
+	/**
+	 * Number of tree-walk evaluations so far. Not synchronized, a lost update only delays
+	 * compilation a little.
+	 */
+	int evaluations;
+	
+	/**
+	 * Compiled handle of type (Bindings)float, null until the threshold is reached.
+	 */
+	volatile MethodHandle jitted;
+	
+	/**
+	 * Compiles an expression whose symbols have been built.
+	 * 
+	 * @param expr Expression
+	 * @param symbols Slots of the symbols of the expression
+	 * @param jitThreshold Number of evaluations after which the expression is compiled into a method
+	 *        handle, 0 to compile right away, negative to never compile
+	 * @param optimize Whether to fold constants and hoist common subexpressions
+	 * @param mode Arithmetic to compile for
+	 * @throws IllegalArgumentException If the expression is malformed, or has a constant that
+	 *         can not be represented in the mode
+	 */
+	CompiledExpression(String expr, SymbolTable symbols, int jitThreshold, boolean optimize, EvalMode mode) {
+		ExprNode parsed = ExprParser.parse(expr, symbols);
+		check(parsed, mode);
+		this.mode = mode;
+		if (optimize) {
+			ExprOptimizer optimizer = new ExprOptimizer(parsed, mode);
+			root = optimizer.root;
+			temps = optimizer.temps.toArray(new ExprNode[optimizer.temps.size()]);
+		}//end if
+		else {
+			root = parsed;
+			temps = new ExprNode[0];
+		}//end else
+		this.symbols = symbols;
+		this.jitThreshold = mode == EvalMode.FLOAT ? jitThreshold : -1;
+		if (this.jitThreshold == 0) {
+			jitted = ExprJit.compile(root, temps);
+		}//end if
+	}
+	
+	/**
+	 * Checks that every constant in a tree has a value in the arithmetic of a mode.
+	 */
+	private static void check(ExprNode node, EvalMode mode) {
+		if (node instanceof ExprNode.Constant) {
+			ExprNode.Constant c = (ExprNode.Constant) node;
+			if (mode == EvalMode.LONG && !c.integral || mode == EvalMode.EXACT && c.exact == null) {
+				throw new IllegalArgumentException("Constant " + c + " can not be evaluated in " + mode + " mode");
+			}//end if
+		}//end if
+		else if (node instanceof ExprNode.ArrayElement) {
+			check(((ExprNode.ArrayElement) node).index, mode);
+		}//end else if
+		else if (node instanceof ExprNode.Negate) {
+			check(((ExprNode.Negate) node).operand, mode);
+		}//end else if
+		else if (node instanceof ExprNode.Binary) {
+			check(((ExprNode.Binary) node).left, mode);
+			check(((ExprNode.Binary) node).right, mode);
+		}//end else if
+	}
+	
+	/**
+	 * One pooled Bindings per thread, made on first use.
+	 */
+	private final ThreadLocal<Bindings> local = new ThreadLocal<Bindings>() {
+		protected Bindings initialValue() {
+			return newBindings();
+		}
+	};
+	
+	/**
+	 * Compiles an expression, or takes it from the shared cache if the same text has been compiled before.
+	 * 
+	 * @param expr Expression
+	 * @return Compiled expression
+	 * @throws IllegalArgumentException If the expression is malformed
+	 */
+	public static CompiledExpression compile(String expr) {
+		return compile(expr, EvalMode.FLOAT);
+	}
+	
+	/**
+	 * Compiles an expression for an arithmetic, or takes it from the shared cache if the same text
+	 * has been compiled for it before.
+	 * 
+	 * @param expr Expression
+	 * @param mode Arithmetic to compile for
+	 * @return Compiled expression
+	 * @throws IllegalArgumentException If the expression is malformed, or has a constant that
+	 *         can not be represented in the mode
+	 */
+	public static CompiledExpression compile(String expr, EvalMode mode) {
+		Expression e = new Expression(expr);
+		e.mode = mode;
+		e.compile();
+		return e.program;
+	}
+	
+	/**
+	 * Returns the arithmetic this expression is compiled for.
+	 * 
+	 * @return Mode
+	 */
+	public EvalMode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Returns new bindings sized for this expression.
+	 * 
+	 * @return Bindings with all scalars zero and no array values
+	 */
+	public Bindings newBindings() {
+		return new Bindings(symbols, temps.length, mode);
+	}
+	
+	/**
+	 * Returns the bindings of this expression pooled for the current thread, so that a thread that
+	 * evaluates over and over does not allocate new ones. They keep the values set last time on
+	 * this thread, and must not be handed to another thread.
+	 * 
+	 * @return Bindings for the current thread
+	 */
+	public Bindings localBindings() {
+		return local.get();
+	}
+	
+	/**
+	 * Returns the slot of a scalar symbol, for setting its value in a Bindings.
+	 * 
+	 * @param name Name of the symbol
+	 * @return Slot, or -1 if there is no such scalar symbol
+	 */
+	public int scalarSlot(String name) {
+		return symbols.scalarSlot(name);
+	}
+	
+	/**
+	 * Returns the slot of an array symbol, for setting its values in a Bindings.
+	 * 
+	 * @param name Name of the symbol
+	 * @return Slot, or -1 if there is no such array symbol
+	 */
+	public int arraySlot(String name) {
+		return symbols.arraySlot(name);
+	}
+	
+	/**
+	 * Evaluates this expression, through the compiled handle if there is one, otherwise by
+	 * walking the tree. Allocates nothing either way. Safe to call from many threads at once,
+	 * as long as each uses its own bindings.
+	 * 
+	 * @param b Values of the symbols, from newBindings or localBindings of this expression
+	 * @return Result of evaluation
+	 */
+	public float evaluate(Bindings b) {
+		checkMode(EvalMode.FLOAT);
+		MethodHandle handle = jitted;
+		if (handle != null) {
+			try {
+				return (float) handle.invokeExact(b);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+		}//end if
+		if (jitThreshold > 0 && ++evaluations == jitThreshold) {
+			jitted = ExprJit.compile(root, temps);
+		}//end if
+		for (int i = 0; i < temps.length; i++) {
+			b.temps[i] = temps[i].eval(b);
+		}//end for
+		return root.eval(b);
+	}
+	
+	/**
+	 * Evaluates this expression in double arithmetic. Allocates nothing.
+	 * 
+	 * @param b Values of the symbols, from newBindings or localBindings of this expression
+	 * @return Result of evaluation
+	 * @throws IllegalStateException If the expression is not compiled for EvalMode.DOUBLE
+	 */
+	public double evaluateDouble(Bindings b) {
+		checkMode(EvalMode.DOUBLE);
+		for (int i = 0; i < temps.length; i++) {
+			b.doubleTemps[i] = temps[i].evalDouble(b);
+		}//end for
+		return root.evalDouble(b);
+	}
+	
+	/**
+	 * Evaluates this expression in long arithmetic. Allocates nothing.
+	 * 
+	 * @param b Values of the symbols, from newBindings or localBindings of this expression
+	 * @return Result of evaluation
+	 * @throws IllegalStateException If the expression is not compiled for EvalMode.LONG
+	 * @throws ArithmeticException On division by zero or overflow
+	 */
+	public long evaluateLong(Bindings b) {
+		checkMode(EvalMode.LONG);
+		for (int i = 0; i < temps.length; i++) {
+			b.longTemps[i] = temps[i].evalLong(b);
+		}//end for
+		return root.evalLong(b);
+	}
+	
+	/**
+	 * Evaluates this expression in BigDecimal arithmetic.
+	 * 
+	 * @param b Values of the symbols, from newBindings or localBindings of this expression
+	 * @return Result of evaluation
+	 * @throws IllegalStateException If the expression is not compiled for EvalMode.EXACT
+	 * @throws ArithmeticException On division by zero
+	 */
+	public BigDecimal evaluateExact(Bindings b) {
+		checkMode(EvalMode.EXACT);
+		for (int i = 0; i < temps.length; i++) {
+			b.exactTemps[i] = temps[i].evalExact(b);
+		}//end for
+		return root.evalExact(b);
+	}
+	
+	private void checkMode(EvalMode expected) {
+		if (mode != expected) {
+			throw new IllegalStateException("Expression is compiled for " + mode + " evaluation, not " + expected);
+		}//end if
+	}
+	
+	/**
+	 * Rows per fork-join task in a parallel batch evaluation.
+	 */
+	static final int PARALLEL_ROWS = 16 * BatchFrame.CHUNK;
+	
+	/**
+	 * Evaluates this expression once per row, with scalar values taken from columns, a chunk of
+	 * rows at a time.
+	 * 
+	 * @param b Values of the symbols that do not vary by row
+	 * @param columns Values of the scalar symbols by slot and row, null for a scalar that takes
+	 *        its value from b for every row
+	 * @param rows Number of rows
+	 * @param parallel Whether to split the rows into fork-join tasks in the common pool
+	 * @return Results by row
+	 */
+	float[] evaluateBatch(Bindings b, int[][] columns, int rows, boolean parallel) {
+		return evaluateBatch(b, columns, -1, rows, parallel);
+	}
+	
+	/**
+	 * Evaluates this expression element-wise over arrays: once per row, with the index scalar
+	 * set to the row number, e.g. A[i]*2 + B[i] for i from 0 to rows-1. Subscripts that are just
+	 * the index read a run of the array in a plain loop. Each result equals what evaluate would
+	 * give with the index set to its row number.
+	 * 
+	 * @param b Values of the symbols other than the index
+	 * @param indexSlot Slot of the index scalar
+	 * @param rows Number of rows
+	 * @param parallel Whether to split the rows into fork-join tasks in the common pool
+	 * @return Results by row
+	 */
+	float[] evaluateMap(Bindings b, int indexSlot, int rows, boolean parallel) {
+		return evaluateBatch(b, new int[symbols.scalarCount()][], indexSlot, rows, parallel);
+	}
+	
+	private float[] evaluateBatch(Bindings b, int[][] columns, int indexSlot, int rows, boolean parallel) {
+		checkMode(EvalMode.FLOAT);
+		float[] results = new float[rows];
+		if (parallel && rows > PARALLEL_ROWS) {
+			new BatchTask(b, columns, indexSlot, results, 0, rows).invoke();
+		}//end if
+		else {
+			evaluateBatch(new BatchFrame(b, columns, indexSlot, temps.length), results, 0, rows);
+		}//end else
+		return results;
+	}
+	
+	/**
+	 * Evaluates rows from up to but not including to, into results.
+	 */
+	void evaluateBatch(BatchFrame f, float[] results, int from, int to) {
+		float[] out = f.push();
+		for (int row = from; row < to; row += BatchFrame.CHUNK) {
+			int len = Math.min(BatchFrame.CHUNK, to - row);
+			for (int i = 0; i < temps.length; i++) {
+				temps[i].evalBatch(f, row, len, f.temps[i]);
+			}//end for
+			root.evalBatch(f, row, len, out);
+			System.arraycopy(out, 0, results, row, len);
+		}//end for
+		f.pop();
+	}
+	
+	/**
+	 * Evaluates a range of rows, splitting it in half until it is at most PARALLEL_ROWS long.
+	 * Each task has its own frame, the bindings and columns are only read.
+	 */
+	private class BatchTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		final Bindings b;
+		
+		final int[][] columns;
+		
+		final int indexSlot;
+		
+		final float[] results;
+		
+		final int from, to;
+		
+		BatchTask(Bindings b, int[][] columns, int indexSlot, float[] results, int from, int to) {
+			this.b = b;
+			this.columns = columns;
+			this.indexSlot = indexSlot;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+		
+		protected void compute() {
+			if (to - from <= PARALLEL_ROWS) {
+				evaluateBatch(new BatchFrame(b, columns, indexSlot, temps.length), results, from, to);
+				return;
+			}//end if
+			int mid = (from + (to - from) / 2) / BatchFrame.CHUNK * BatchFrame.CHUNK;
+			invokeAll(new BatchTask(b, columns, indexSlot, results, from, mid), 
+					new BatchTask(b, columns, indexSlot, results, mid, to));
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String s = "";
+		for (int i = 0; i < temps.length; i++) {
+			s += "$" + i + " = " + temps[i] + "; ";
+		}//end for
+		return s + root;
+	}
+}
@@ -0,0 +1,35 @@
+package apps;
+
+/**
+ * This enum lists the arithmetic an expression can be compiled for. The mode is fixed when the
+ * expression is compiled, since constants are folded in the arithmetic of the mode.
+ * 
+ * @author runb-cs112
+ *
+ */
+public enum EvalMode {
+	
+	/**
+	 * float arithmetic, what evaluate has always used. The only mode with batch evaluation and
+	 * the method handle tier.
+	 */
+	FLOAT,
+	
+	/**
+	 * double arithmetic. Allocates nothing.
+	 */
+	DOUBLE,
+	
+	/**
+	 * long arithmetic, for expressions with only integer constants. Division truncates toward zero,
+	 * and division by zero or overflow throws ArithmeticException. Allocates nothing.
+	 */
+	LONG,
+	
+	/**
+	 * BigDecimal arithmetic. Sums, differences and products are exact, quotients are rounded to
+	 * 34 significant digits (MathContext.DECIMAL128), so they are exact whenever they fit.
+	 * Division by zero throws ArithmeticException.
+	 */
+	EXACT
+}
@@ -0,0 +1,135 @@
+package apps;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * This class compiles an expression tree into a tree of method handles, one per node, composed
+ * with folds and filters into a single handle of type (Bindings)float. Unlike the tree walk, the
+ * composed handle has no virtual calls or switches on the operator, so once it is hot the JVM can
+ * inline the whole expression into straight-line code. Each node does exactly the float operation
+ * the tree walk does, so the results are the same bit for bit.
+ * 
+ * @author runb-cs112
+ *
+ */
+class ExprJit {
+	
+	static final MethodHandle SCALAR, ELEMENT, TEMP, STORE, NEGATE, ADD, SUBTRACT, MULTIPLY, DIVIDE;
+	
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType binary = MethodType.methodType(float.class, float.class, float.class);
+		try {
+			SCALAR = lookup.findStatic(ExprJit.class, "scalar", MethodType.methodType(float.class, Bindings.class, int.class));
+			ELEMENT = lookup.findStatic(ExprJit.class, "element", 
+					MethodType.methodType(float.class, float.class, Bindings.class, int.class));
+			TEMP = lookup.findStatic(ExprJit.class, "temp", MethodType.methodType(float.class, Bindings.class, int.class));
+			STORE = lookup.findStatic(ExprJit.class, "store", 
+					MethodType.methodType(void.class, float.class, Bindings.class, int.class));
+			NEGATE = lookup.findStatic(ExprJit.class, "negate", MethodType.methodType(float.class, float.class));
+			ADD = lookup.findStatic(ExprJit.class, "add", binary);
+			SUBTRACT = lookup.findStatic(ExprJit.class, "subtract", binary);
+			MULTIPLY = lookup.findStatic(ExprJit.class, "multiply", binary);
+			DIVIDE = lookup.findStatic(ExprJit.class, "divide", binary);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	/**
+	 * Compiles an expression tree and the temporaries it refers to.
+	 * 
+	 * @param root Root of the tree
+	 * @param temps Definitions of the temporaries, in the order they are computed
+	 * @return Handle of type (Bindings)float that computes the temporaries, then evaluates the tree
+	 */
+	static MethodHandle compile(ExprNode root, ExprNode[] temps) {
+		MethodHandle handle = compile(root);
+		for (int i = temps.length-1; i >= 0; i--) {
+			//(Bindings)void that computes temporary i and stores it, run before everything after it
+			MethodHandle store = MethodHandles.insertArguments(STORE, 2, i);
+			store = MethodHandles.foldArguments(store, compile(temps[i]));
+			handle = MethodHandles.foldArguments(handle, store);
+		}//end for
+		return handle;
+	}
+	
+	/**
+	 * Compiles an expression tree.
+	 * 
+	 * @param node Root of the tree
+	 * @return Handle of type (Bindings)float that evaluates the tree
+	 */
+	static MethodHandle compile(ExprNode node) {
+		if (node instanceof ExprNode.Constant) {
+			MethodHandle constant = MethodHandles.constant(float.class, ((ExprNode.Constant) node).value);
+			return MethodHandles.dropArguments(constant, 0, Bindings.class);
+		}//end if
+		if (node instanceof ExprNode.Scalar) {
+			return MethodHandles.insertArguments(SCALAR, 1, ((ExprNode.Scalar) node).slot);
+		}//end if
+		if (node instanceof ExprNode.Temp) {
+			return MethodHandles.insertArguments(TEMP, 1, ((ExprNode.Temp) node).slot);
+		}//end if
+		if (node instanceof ExprNode.ArrayElement) {
+			ExprNode.ArrayElement element = (ExprNode.ArrayElement) node;
+			//(float index, Bindings)float, with the index computed from the bindings first
+			MethodHandle read = MethodHandles.insertArguments(ELEMENT, 2, element.slot);
+			return MethodHandles.foldArguments(read, compile(element.index));
+		}//end if
+		if (node instanceof ExprNode.Negate) {
+			return MethodHandles.filterReturnValue(compile(((ExprNode.Negate) node).operand), NEGATE);
+		}//end if
+		
+		ExprNode.Binary binary = (ExprNode.Binary) node;
+		MethodHandle op;
+		switch (binary.op) {
+		case '+': op = ADD; break;
+		case '-': op = SUBTRACT; break;
+		case '*': op = MULTIPLY; break;
+		default: op = DIVIDE;
+		}
+		//(float l, float r, Bindings)float, then r and l are computed from the bindings, l first
+		op = MethodHandles.dropArguments(op, 2, Bindings.class);
+		op = MethodHandles.foldArguments(op, 1, compile(binary.right));
+		return MethodHandles.foldArguments(op, 0, compile(binary.left));
+	}
+	
+	private static float scalar(Bindings b, int slot) {
+		return b.scalars[slot];
+	}
+	
+	private static float element(float index, Bindings b, int slot) {
+		return b.arrays[slot].get((int) index);
+	}
+	
+	private static float temp(Bindings b, int slot) {
+		return b.temps[slot];
+	}
+	
+	private static void store(float value, Bindings b, int slot) {
+		b.temps[slot] = value;
+	}
+	
+	private static float negate(float x) {
+		return -x;
+	}
+	
+	private static float add(float l, float r) {
+		return l + r;
+	}
+	
+	private static float subtract(float l, float r) {
+		return l - r;
+	}
+	
+	private static float multiply(float l, float r) {
+		return l * r;
+	}
+	
+	private static float divide(float l, float r) {
+		return l / r;
+	}
+}
@@ -0,0 +1,552 @@
+package apps;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * This class implements a node of a compiled expression tree. Nodes are immutable, and refer to
+ * symbols by their slot, i.e. their index in the scalars or arrays list of the Expression they were
+ * compiled from, so the same tree can be evaluated over and over with new symbol values.
+ * Two nodes are equal if their subtrees are the same, which is what common subexpressions are
+ * found by.
+ * 
+ * @author runb-cs112
+ *
+ */
+abstract class ExprNode {
+	
+	/**
+	 * Evaluates the subexpression rooted at this node.
+	 * 
+	 * @param b Values of the symbols, by slot
+	 * @return Value of the subexpression
+	 */
+	abstract float eval(Bindings b);
+	
+	/**
+	 * Evaluates the subexpression rooted at this node in double arithmetic.
+	 * 
+	 * @param b Values of the symbols, by slot
+	 * @return Value of the subexpression
+	 */
+	abstract double evalDouble(Bindings b);
+	
+	/**
+	 * Evaluates the subexpression rooted at this node in long arithmetic. See EvalMode.LONG.
+	 * 
+	 * @param b Values of the symbols, by slot
+	 * @return Value of the subexpression
+	 * @throws ArithmeticException On division by zero or overflow
+	 */
+	abstract long evalLong(Bindings b);
+	
+	/**
+	 * Evaluates the subexpression rooted at this node in BigDecimal arithmetic. See EvalMode.EXACT.
+	 * 
+	 * @param b Values of the symbols, by slot
+	 * @return Value of the subexpression
+	 * @throws ArithmeticException On division by zero
+	 */
+	abstract BigDecimal evalExact(Bindings b);
+	
+	/**
+	 * Evaluates the subexpression rooted at this node in the arithmetic of a mode.
+	 * 
+	 * @param mode Mode
+	 * @return Constant node with the value, in every field the mode reads
+	 * @throws ArithmeticException If evaluation in the mode throws
+	 */
+	Constant fold(EvalMode mode) {
+		switch (mode) {
+		case FLOAT: return new Constant(eval(null));
+		case DOUBLE: double d = evalDouble(null); return new Constant((float) d, d, null);
+		case LONG: long l = evalLong(null); return new Constant(l, l, BigDecimal.valueOf(l));
+		default: BigDecimal x = evalExact(null); return new Constant(x.floatValue(), x.doubleValue(), x);
+		}
+	}
+	
+	/**
+	 * Truncates a subscript to an int. One out of int range becomes a bad index rather than
+	 * wrapping around to a good one.
+	 */
+	static int subscript(long index) {
+		return index < Integer.MIN_VALUE ? Integer.MIN_VALUE : index > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) index;
+	}
+	
+	/**
+	 * Evaluates the subexpression rooted at this node for len rows at once, starting at row from.
+	 * Each row gets the same float operations as eval, so the results are the same bit for bit.
+	 * 
+	 * @param f Bindings, columns and scratch buffers
+	 * @param from First row
+	 * @param len Number of rows, at most BatchFrame.CHUNK
+	 * @param out Buffer for the len results
+	 */
+	abstract void evalBatch(BatchFrame f, int from, int len, float[] out);
+	
+	/**
+	 * A number in the expression.
+	 */
+	static final class Constant extends ExprNode {
+		
+		final float value;
+		
+		final double doubleValue;
+		
+		/**
+		 * Exact value, null if there is none, e.g. for NaN.
+		 */
+		final BigDecimal exact;
+		
+		/**
+		 * Whether the exact value is an integer that fits in a long, and if so, that long.
+		 */
+		final boolean integral;
+		
+		final long longValue;
+		
+		Constant(float value) {
+			this(value, value, Float.isNaN(value) || Float.isInfinite(value) ? null : new BigDecimal(value));
+		}
+		
+		/**
+		 * Initializes a constant with its value in each arithmetic.
+		 */
+		Constant(float value, double doubleValue, BigDecimal exact) {
+			this.value = value;
+			this.doubleValue = doubleValue;
+			this.exact = exact;
+			long l = 0;
+			boolean integral = false;
+			if (exact != null) {
+				try {
+					l = exact.longValueExact();
+					integral = true;
+				} catch (ArithmeticException e) {
+					//has a fraction, or is too large
+				}
+			}//end if
+			this.integral = integral;
+			longValue = l;
+		}
+		
+		/**
+		 * Makes the constant for a number in an expression, read in each arithmetic.
+		 * 
+		 * @param token The number
+		 * @return Constant
+		 * @throws NumberFormatException If the token is not a float
+		 */
+		static Constant parse(String token) {
+			float value = Float.parseFloat(token);
+			BigDecimal exact = null;
+			try {
+				exact = new BigDecimal(token);
+			} catch (NumberFormatException e) {
+				//a float, but not a decimal, e.g. 1f
+			}
+			return new Constant(value, Double.parseDouble(token), exact);
+		}
+		
+		float eval(Bindings b) {
+			return value;
+		}
+		
+		double evalDouble(Bindings b) {
+			return doubleValue;
+		}
+		
+		long evalLong(Bindings b) {
+			return longValue;
+		}
+		
+		BigDecimal evalExact(Bindings b) {
+			return exact;
+		}
+		
+		public boolean equals(Object other) {
+			if (!(other instanceof Constant)) {
+				return false;
+			}//end if
+			Constant c = (Constant) other;
+			return Float.floatToIntBits(value) == Float.floatToIntBits(c.value)
+				&& Double.doubleToLongBits(doubleValue) == Double.doubleToLongBits(c.doubleValue)
+				&& (exact == null ? c.exact == null : exact.equals(c.exact));
+		}
+		
+		public int hashCode() {
+			return Float.floatToIntBits(value);
+		}
+		
+		void evalBatch(BatchFrame f, int from, int len, float[] out) {
+			for (int i = 0; i < len; i++) {
+				out[i] = value;
+			}//end for
+		}
+		
+		public String toString() {
+			return "" + value;
+		}
+	}
+	
+	/**
+	 * A scalar variable.
+	 */
+	static final class Scalar extends ExprNode {
+		
+		final int slot;
+		
+		final String name;
+		
+		Scalar(int slot, String name) {
+			this.slot = slot;
+			this.name = name;
+		}
+		
+		float eval(Bindings b) {
+			return b.scalars[slot];
+		}
+		
+		double evalDouble(Bindings b) {
+			return b.scalars[slot];
+		}
+		
+		long evalLong(Bindings b) {
+			return b.scalars[slot];
+		}
+		
+		BigDecimal evalExact(Bindings b) {
+			return BigDecimal.valueOf(b.scalars[slot]);
+		}
+		
+		public boolean equals(Object other) {
+			return other instanceof Scalar && slot == ((Scalar) other).slot;
+		}
+		
+		public int hashCode() {
+			return 31 * slot + 1;
+		}
+		
+		void evalBatch(BatchFrame f, int from, int len, float[] out) {
+			int[] column = f.columns[slot];
+			if (slot == f.indexSlot) {
+				for (int i = 0; i < len; i++) {
+					out[i] = from + i;
+				}//end for
+			}//end if
+			else if (column == null) {
+				float value = f.bindings.scalars[slot];
+				for (int i = 0; i < len; i++) {
+					out[i] = value;
+				}//end for
+			}//end if
+			else {
+				for (int i = 0; i < len; i++) {
+					out[i] = column[from+i];
+				}//end for
+			}//end else
+		}
+		
+		public String toString() {
+			return name;
+		}
+	}
+	
+	/**
+	 * An array element, with the subscript as a subexpression. The subscript value is
+	 * truncated to an int.
+	 */
+	static final class ArrayElement extends ExprNode {
+		
+		final int slot;
+		
+		final String name;
+		
+		final ExprNode index;
+		
+		final int hash;
+		
+		ArrayElement(int slot, String name, ExprNode index) {
+			this.slot = slot;
+			this.name = name;
+			this.index = index;
+			hash = 31 * (31 * slot + 2) + index.hashCode();
+		}
+		
+		float eval(Bindings b) {
+			return b.arrays[slot].get((int) index.eval(b));
+		}
+		
+		double evalDouble(Bindings b) {
+			return b.arrays[slot].get((int) index.evalDouble(b));
+		}
+		
+		long evalLong(Bindings b) {
+			return b.arrays[slot].get(subscript(index.evalLong(b)));
+		}
+		
+		BigDecimal evalExact(Bindings b) {
+			BigDecimal i = index.evalExact(b);
+			//truncated like the other modes, huge subscripts are out of bounds
+			int n = i.abs().compareTo(BigDecimal.valueOf(Integer.MAX_VALUE)) > 0 ? -1 : i.intValue();
+			return BigDecimal.valueOf(b.arrays[slot].get(n));
+		}
+		
+		public boolean equals(Object other) {
+			if (other == this) {
+				return true;
+			}//end if
+			if (!(other instanceof ArrayElement) || hash != other.hashCode()) {
+				return false;
+			}//end if
+			ArrayElement e = (ArrayElement) other;
+			return slot == e.slot && index.equals(e.index);
+		}
+		
+		public int hashCode() {
+			return hash;
+		}
+		
+		void evalBatch(BatchFrame f, int from, int len, float[] out) {
+			ArrayValues backing = f.bindings.arrays[slot];
+			int[] values = backing.dense();
+			if (values != null && index instanceof Scalar && ((Scalar) index).slot == f.indexSlot
+					&& from + len <= 1 << 24) {
+				//A[i] over the index, the rows are a run of the array as long as every row number is an exact float
+				for (int i = 0; i < len; i++) {
+					out[i] = values[from + i];
+				}//end for
+				return;
+			}//end if
+			index.evalBatch(f, from, len, out);
+			if (values == null) {
+				for (int i = 0; i < len; i++) {
+					out[i] = backing.get((int) out[i]);
+				}//end for
+				return;
+			}//end if
+			for (int i = 0; i < len; i++) {
+				out[i] = values[(int) out[i]];
+			}//end for
+		}
+		
+		public String toString() {
+			return name + "[" + index + "]";
+		}
+	}
+	
+	/**
+	 * A unary minus.
+	 */
+	static final class Negate extends ExprNode {
+		
+		final ExprNode operand;
+		
+		final int hash;
+		
+		Negate(ExprNode operand) {
+			this.operand = operand;
+			hash = 31 * 3 + operand.hashCode();
+		}
+		
+		float eval(Bindings b) {
+			return -operand.eval(b);
+		}
+		
+		double evalDouble(Bindings b) {
+			return -operand.evalDouble(b);
+		}
+		
+		long evalLong(Bindings b) {
+			return Math.negateExact(operand.evalLong(b));
+		}
+		
+		BigDecimal evalExact(Bindings b) {
+			return operand.evalExact(b).negate();
+		}
+		
+		public boolean equals(Object other) {
+			if (other == this) {
+				return true;
+			}//end if
+			return other instanceof Negate && hash == other.hashCode() && operand.equals(((Negate) other).operand);
+		}
+		
+		public int hashCode() {
+			return hash;
+		}
+		
+		void evalBatch(BatchFrame f, int from, int len, float[] out) {
+			operand.evalBatch(f, from, len, out);
+			for (int i = 0; i < len; i++) {
+				out[i] = -out[i];
+			}//end for
+		}
+		
+		public String toString() {
+			return "(-" + operand + ")";
+		}
+	}
+	
+	/**
+	 * One of the four binary operators, + - * or /.
+	 */
+	static final class Binary extends ExprNode {
+		
+		final char op;
+		
+		final ExprNode left;
+		
+		final ExprNode right;
+		
+		final int hash;
+		
+		Binary(char op, ExprNode left, ExprNode right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+			hash = 31 * (31 * op + left.hashCode()) + right.hashCode();
+		}
+		
+		public boolean equals(Object other) {
+			if (other == this) {
+				return true;
+			}//end if
+			if (!(other instanceof Binary) || hash != other.hashCode()) {
+				return false;
+			}//end if
+			Binary e = (Binary) other;
+			return op == e.op && left.equals(e.left) && right.equals(e.right);
+		}
+		
+		public int hashCode() {
+			return hash;
+		}
+		
+		float eval(Bindings b) {
+			float l = left.eval(b);
+			float r = right.eval(b);
+			switch (op) {
+			case '+': return l + r;
+			case '-': return l - r;
+			case '*': return l * r;
+			default: return l / r;
+			}
+		}
+		
+		double evalDouble(Bindings b) {
+			double l = left.evalDouble(b);
+			double r = right.evalDouble(b);
+			switch (op) {
+			case '+': return l + r;
+			case '-': return l - r;
+			case '*': return l * r;
+			default: return l / r;
+			}
+		}
+		
+		long evalLong(Bindings b) {
+			long l = left.evalLong(b);
+			long r = right.evalLong(b);
+			switch (op) {
+			case '+': return Math.addExact(l, r);
+			case '-': return Math.subtractExact(l, r);
+			case '*': return Math.multiplyExact(l, r);
+			default:
+				if (l == Long.MIN_VALUE && r == -1) {
+					throw new ArithmeticException("long overflow");
+				}//end if
+				return l / r;
+			}
+		}
+		
+		BigDecimal evalExact(Bindings b) {
+			BigDecimal l = left.evalExact(b);
+			BigDecimal r = right.evalExact(b);
+			switch (op) {
+			case '+': return l.add(r);
+			case '-': return l.subtract(r);
+			case '*': return l.multiply(r);
+			default: return l.divide(r, MathContext.DECIMAL128);
+			}
+		}
+		
+		void evalBatch(BatchFrame f, int from, int len, float[] out) {
+			left.evalBatch(f, from, len, out);
+			float[] r = f.push();
+			right.evalBatch(f, from, len, r);
+			//one loop per operator, so each loop body is a single vectorizable operation
+			switch (op) {
+			case '+':
+				for (int i = 0; i < len; i++) {
+					out[i] = out[i] + r[i];
+				}//end for
+				break;
+			case '-':
+				for (int i = 0; i < len; i++) {
+					out[i] = out[i] - r[i];
+				}//end for
+				break;
+			case '*':
+				for (int i = 0; i < len; i++) {
+					out[i] = out[i] * r[i];
+				}//end for
+				break;
+			default:
+				for (int i = 0; i < len; i++) {
+					out[i] = out[i] / r[i];
+				}//end for
+			}
+			f.pop();
+		}
+		
+		public String toString() {
+			return "(" + left + op + right + ")";
+		}
+	}
+	
+	/**
+	 * A common subexpression, computed once per evaluation into a temporary before the
+	 * rest of the expression is evaluated.
+	 */
+	static final class Temp extends ExprNode {
+		
+		final int slot;
+		
+		Temp(int slot) {
+			this.slot = slot;
+		}
+		
+		float eval(Bindings b) {
+			return b.temps[slot];
+		}
+		
+		double evalDouble(Bindings b) {
+			return b.doubleTemps[slot];
+		}
+		
+		long evalLong(Bindings b) {
+			return b.longTemps[slot];
+		}
+		
+		BigDecimal evalExact(Bindings b) {
+			return b.exactTemps[slot];
+		}
+		
+		void evalBatch(BatchFrame f, int from, int len, float[] out) {
+			System.arraycopy(f.temps[slot], 0, out, 0, len);
+		}
+		
+		public boolean equals(Object other) {
+			return other instanceof Temp && slot == ((Temp) other).slot;
+		}
+		
+		public int hashCode() {
+			return 31 * slot + 4;
+		}
+		
+		public String toString() {
+			return "$" + slot;
+		}
+	}
+}
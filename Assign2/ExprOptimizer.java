@@ -0,0 +1,213 @@
+package apps;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class rewrites an expression tree so that it does less work per evaluation, without changing
+ * any result by a single bit:
+ * <ul>
+ * <li>Subtrees made only of constants are folded into one constant. The fold does the same 
+ *     operations evaluation would, in the arithmetic of the mode the expression is compiled for.
+ *     A subtree whose evaluation throws, e.g. 1/0 in long arithmetic, is left to throw when evaluated.</li>
+ * <li>Identities that hold exactly in float are simplified: x*1, 1*x, x/1, x-0 and -(-x) become x.
+ *     Ones that do not hold for -0, NaN or infinities, like x+0 or x*0, are left alone, as are x/1
+ *     and x-0 in exact arithmetic, where the quotient is rounded and the difference can come back
+ *     with another scale, e.g. 1E+3 - 0 is 1000, and -(-x) in long arithmetic, where negating
+ *     Long.MIN_VALUE throws.</li>
+ * <li>Subtrees that occur more than once, e.g. a[i+1] in a[i+1]*b + a[i+1]*c, are hoisted into
+ *     temporaries that are computed once at the start of each evaluation.</li>
+ * </ul>
+ * An expression has no branches, so every subtree is evaluated either way, and one that throws
+ * still throws. Hoisting does change the order though: if two subtrees throw, a hoisted one
+ * throws first, even if it comes later in the expression, so the exception may differ.
+ * 
+ * @author runb-cs112
+ *
+ */
+class ExprOptimizer {
+	
+	/**
+	 * One node per distinct subtree, so that equal subtrees become the same object.
+	 */
+	private final HashMap<ExprNode,ExprNode> canonical = new HashMap<ExprNode,ExprNode>();
+	
+	/**
+	 * Number of parents of each distinct subtree, once equal subtrees are merged.
+	 */
+	private final HashMap<ExprNode,Integer> parents = new HashMap<ExprNode,Integer>();
+	
+	/**
+	 * Temporary slot of each hoisted subtree.
+	 */
+	private final HashMap<ExprNode,Integer> slots = new HashMap<ExprNode,Integer>();
+	
+	/**
+	 * Definitions of the temporaries, in the order they have to be computed.
+	 */
+	final ArrayList<ExprNode> temps = new ArrayList<ExprNode>();
+	
+	/**
+	 * Root of the optimized tree.
+	 */
+	final ExprNode root;
+	
+	/**
+	 * Arithmetic the tree is evaluated in.
+	 */
+	private final EvalMode mode;
+	
+	/**
+	 * Optimizes an expression tree.
+	 * 
+	 * @param root Root of the tree as parsed
+	 * @param mode Arithmetic the tree will be evaluated in
+	 */
+	ExprOptimizer(ExprNode root, EvalMode mode) {
+		this.mode = mode;
+		ExprNode merged = simplify(root);
+		countParents(merged);
+		this.root = hoist(merged);
+	}
+	
+	/**
+	 * Folds constants and simplifies identities bottom up, and merges equal subtrees.
+	 */
+	private ExprNode simplify(ExprNode node) {
+		ExprNode result = node;
+		if (node instanceof ExprNode.ArrayElement) {
+			ExprNode.ArrayElement e = (ExprNode.ArrayElement) node;
+			result = new ExprNode.ArrayElement(e.slot, e.name, simplify(e.index));
+		}//end if
+		else if (node instanceof ExprNode.Negate) {
+			ExprNode operand = simplify(((ExprNode.Negate) node).operand);
+			if (operand instanceof ExprNode.Constant) {
+				result = fold(new ExprNode.Negate(operand));
+			}//end if
+			else if (operand instanceof ExprNode.Negate && mode != EvalMode.LONG) {
+				//negating Long.MIN_VALUE overflows, so in long mode -(-x) may throw where x does not
+				result = ((ExprNode.Negate) operand).operand;
+			}//end else if
+			else {
+				result = new ExprNode.Negate(operand);
+			}//end else
+		}//end else if
+		else if (node instanceof ExprNode.Binary) {
+			ExprNode.Binary b = (ExprNode.Binary) node;
+			result = simplify(b.op, simplify(b.left), simplify(b.right));
+		}//end else if
+		
+		ExprNode existing = canonical.get(result);
+		if (existing != null) {
+			return existing;
+		}//end if
+		canonical.put(result, result);
+		return result;
+	}
+	
+	private ExprNode simplify(char op, ExprNode left, ExprNode right) {
+		if (left instanceof ExprNode.Constant && right instanceof ExprNode.Constant) {
+			//evaluate with the same operation the tree would
+			return fold(new ExprNode.Binary(op, left, right));
+		}//end if
+		if ((op == '*' || op == '/' && mode != EvalMode.EXACT) && isConstant(right, 1)) {
+			//an exact quotient is rounded to 34 digits, so x/1 may not be x
+			return left;
+		}//end if
+		if (op == '*' && isConstant(left, 1)) {
+			return right;
+		}//end if
+		if (op == '-' && mode != EvalMode.EXACT && isConstant(right, 0)) {
+			//x - +0 is x, even for x = -0, but an exact difference takes the larger scale of the two
+			return left;
+		}//end if
+		return new ExprNode.Binary(op, left, right);
+	}
+	
+	/**
+	 * Folds a node whose operands are constants, unless evaluating it throws.
+	 */
+	private ExprNode fold(ExprNode node) {
+		try {
+			return node.fold(mode);
+		} catch (ArithmeticException e) {
+			return node;
+		}
+	}
+	
+	/**
+	 * Tells whether a node is a constant that is exactly 1 or +0 in the arithmetic of the mode,
+	 * i.e. one that x*1, x/1 and x-0 give back x for.
+	 */
+	private boolean isConstant(ExprNode node, int value) {
+		if (!(node instanceof ExprNode.Constant)) {
+			return false;
+		}//end if
+		ExprNode.Constant c = (ExprNode.Constant) node;
+		switch (mode) {
+		case FLOAT: return Float.floatToIntBits(c.value) == Float.floatToIntBits(value);
+		case DOUBLE: return Double.doubleToLongBits(c.doubleValue) == Double.doubleToLongBits(value);
+		case LONG: return c.integral && c.longValue == value;
+		default: return BigDecimal.valueOf(value).equals(c.exact);
+		}
+	}
+	
+	/**
+	 * Counts, for every distinct subtree, the distinct subtrees that have it as a child.
+	 */
+	private void countParents(ExprNode node) {
+		Integer count = parents.get(node);
+		parents.put(node, count == null ? 1 : count + 1);
+		if (count != null) {
+			//children were counted the first time
+			return;
+		}//end if
+		if (node instanceof ExprNode.ArrayElement) {
+			countParents(((ExprNode.ArrayElement) node).index);
+		}//end if
+		else if (node instanceof ExprNode.Negate) {
+			countParents(((ExprNode.Negate) node).operand);
+		}//end else if
+		else if (node instanceof ExprNode.Binary) {
+			countParents(((ExprNode.Binary) node).left);
+			countParents(((ExprNode.Binary) node).right);
+		}//end else if
+	}
+	
+	/**
+	 * Replaces every subtree with more than one parent by a temporary. A temporary is defined
+	 * after the temporaries it uses, so they can be computed in order. Temporaries are computed
+	 * before the rest of the tree, so an exception they throw comes before any from the rest.
+	 */
+	private ExprNode hoist(ExprNode node) {
+		if (node instanceof ExprNode.Constant || node instanceof ExprNode.Scalar) {
+			//cheaper to read again than to hoist
+			return node;
+		}//end if
+		Integer slot = slots.get(node);
+		if (slot != null) {
+			return new ExprNode.Temp(slot);
+		}//end if
+		
+		ExprNode result;
+		if (node instanceof ExprNode.ArrayElement) {
+			ExprNode.ArrayElement e = (ExprNode.ArrayElement) node;
+			result = new ExprNode.ArrayElement(e.slot, e.name, hoist(e.index));
+		}//end if
+		else if (node instanceof ExprNode.Negate) {
+			result = new ExprNode.Negate(hoist(((ExprNode.Negate) node).operand));
+		}//end else if
+		else {
+			ExprNode.Binary b = (ExprNode.Binary) node;
+			result = new ExprNode.Binary(b.op, hoist(b.left), hoist(b.right));
+		}//end else
+		
+		if (parents.get(node) > 1) {
+			slots.put(node, temps.size());
+			temps.add(result);
+			return new ExprNode.Temp(temps.size()-1);
+		}//end if
+		return result;
+	}
+}
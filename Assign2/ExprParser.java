@@ -0,0 +1,153 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+
+/**
+ * This class parses an expression into a tree of ExprNodes, by recursive descent over the
+ * grammar
+ * <pre>
+ *     expr    := term (('+' | '-') term)*
+ *     term    := factor (('*' | '/') factor)*
+ *     factor  := '-' factor | number | name | name '[' expr ']' | '(' expr ')'
+ * </pre>
+ * so * and / bind tighter than + and -, and operators of the same precedence are applied
+ * left to right.
+ * 
+ * @author runb-cs112
+ *
+ */
+class ExprParser {
+	
+	/**
+	 * Tokens of the expression, without white space.
+	 */
+	String[] tokens;
+	
+	/**
+	 * Index of the next token to be read.
+	 */
+	int pos;
+	
+	/**
+	 * Slots of the symbols.
+	 */
+	SymbolTable symbols;
+	
+	ExprParser(String expr, SymbolTable symbols) {
+		tokens = tokenize(expr);
+		this.symbols = symbols;
+	}
+	
+	/**
+	 * Splits an expression into tokens, dropping white space.
+	 * 
+	 * @param expr Expression
+	 * @return Tokens, none of which holds a space or a tab
+	 */
+	static String[] tokenize(String expr) {
+		ArrayList<String> list = new ArrayList<String>();
+		StringTokenizer st = new StringTokenizer(expr, Expression.delims, true);
+		while (st.hasMoreTokens()) {
+			String token = st.nextToken();
+			if (token.charAt(0) != ' ' && token.charAt(0) != '\t') {
+				list.add(token);
+			}//end if
+		}//end while
+		return list.toArray(new String[list.size()]);
+	}
+	
+	/**
+	 * Parses an expression whose symbols have already been built.
+	 * 
+	 * @param expr Expression
+	 * @param symbols Slots of the symbols of the expression
+	 * @return Root of the expression tree
+	 * @throws IllegalArgumentException If the expression is malformed
+	 */
+	static ExprNode parse(String expr, SymbolTable symbols) {
+		ExprParser parser = new ExprParser(expr, symbols);
+		if (parser.tokens.length == 0) {
+			return new ExprNode.Constant(0);
+		}//end if
+		ExprNode root = parser.expr();
+		if (parser.pos < parser.tokens.length) {
+			throw parser.error("unexpected " + parser.tokens[parser.pos]);
+		}//end if
+		return root;
+	}
+	
+	private ExprNode expr() {
+		ExprNode node = term();
+		while (peek('+') || peek('-')) {
+			char op = tokens[pos++].charAt(0);
+			node = new ExprNode.Binary(op, node, term());
+		}//end while
+		return node;
+	}
+	
+	private ExprNode term() {
+		ExprNode node = factor();
+		while (peek('*') || peek('/')) {
+			char op = tokens[pos++].charAt(0);
+			node = new ExprNode.Binary(op, node, factor());
+		}//end while
+		return node;
+	}
+	
+	private ExprNode factor() {
+		if (pos == tokens.length) {
+			throw error("unexpected end");
+		}//end if
+		String token = tokens[pos++];
+		char c = token.charAt(0);
+		if (c == '-') {
+			return new ExprNode.Negate(factor());
+		}//end if
+		if (c == '(') {
+			ExprNode node = expr();
+			expect(')');
+			return node;
+		}//end if
+		if (Character.isDigit(c) || c == '.') {
+			try {
+				return ExprNode.Constant.parse(token);
+			} catch (NumberFormatException e) {
+				throw error("bad number " + token);
+			}
+		}//end if
+		if (Character.isLetter(c)) {
+			if (peek('[')) {
+				pos++;
+				int slot = symbols.arraySlot(token);
+				if (slot == -1) {
+					throw error("unknown array " + token);
+				}//end if
+				ExprNode index = expr();
+				expect(']');
+				return new ExprNode.ArrayElement(slot, token, index);
+			}//end if
+			int slot = symbols.scalarSlot(token);
+			if (slot == -1) {
+				throw error("unknown scalar " + token);
+			}//end if
+			return new ExprNode.Scalar(slot, token);
+		}//end if
+		throw error("unexpected " + token);
+	}
+	
+	private boolean peek(char c) {
+		return pos < tokens.length && tokens[pos].length() == 1 && tokens[pos].charAt(0) == c;
+	}
+	
+	private void expect(char c) {
+		if (!peek(c)) {
+			throw error("expected " + c);
+		}//end if
+		pos++;
+	}
+	
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException("Malformed expression, " + message + " at token " + pos);
+	}
+}
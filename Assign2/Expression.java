@@ -1,6 +1,9 @@
 package apps;
 
 import java.io.*;
+import java.math.BigDecimal;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 import structures.Stack;
@@ -21,6 +24,52 @@ public class Expression {
 	 * Array symbols in the expression
 	 */
 	ArrayList<ArraySymbol> arrays;
+	
+	/**
+	 * Values of the array symbols, by slot. For a dense array this wraps the ArraySymbol's values;
+	 * a sparse or mapped array has no ArraySymbol values, only these.
+	 */
+	ArrayValues[] backings;
+	
+	/**
+	 * Slots of the scalar and array symbols, i.e. their indexes in the scalars and arrays lists
+	 */
+	SymbolTable symbols;
+	
+	/**
+	 * Expression compiled into a tree, null until compile is called
+	 */
+	CompiledExpression program;
+	
+	/**
+	 * Symbol values the compiled expression is evaluated with
+	 */
+	Bindings bindings;
+	
+	/**
+	 * Number of evaluations after which the compiled expression switches to a method handle
+	 */
+	int jitThreshold = CompiledExpression.DEFAULT_JIT_THRESHOLD;
+	
+	/**
+	 * Whether compile folds constants and hoists common subexpressions
+	 */
+	boolean optimize = true;
+	
+	/**
+	 * Arithmetic the expression is compiled for, set by the evaluate method last called
+	 */
+	EvalMode mode = EvalMode.FLOAT;
+	
+	/**
+	 * Values of the subexpressions kept between calls of evaluateIncremental, null until it is called
+	 */
+	IncrementalEvaluator incremental;
+	
+	/**
+	 * Records timings and counts if set, null when profiling is off
+	 */
+	ExpressionProfiler profiler;
     
     /**
      * String containing all delimiters (characters other than variables and constants), 
@@ -28,6 +77,13 @@ public class Expression {
      */
     public static final String delims = " \t*+-/()[]";
     
+    /**
+     * Compiled expressions shared by all Expressions, keyed by text. Holds the number of entries set
+     * with the expression.cacheSize system property, 4096 by default. Null if that is 0.
+     */
+    static final ExpressionCache cache = Integer.getInteger("expression.cacheSize", 4096) > 0 
+    		? new ExpressionCache(Integer.getInteger("expression.cacheSize", 4096)) : null;
+    
     /**
      * Initializes this Expression object with an input expression. Sets all other
      * fields to null.
@@ -44,10 +100,35 @@ public class Expression {
      * even if it appears more than once in the expression.
      * At this time, values for all variables are set to
      * zero - they will be loaded from a file in the loadSymbolValues method.
+     * If the same expression text has been compiled before, the symbols are taken from the
+     * shared cache instead of the text being tokenized again.
      */
     public void buildSymbols() {
+    	long start = profiler == null ? 0 : profiler.start();
+    	CompiledExpression cached = cache == null ? null : cache.get(ExpressionCache.key(expr, jitThreshold, optimize, mode));
+    	if (cached != null) {
+    		scalars = new ArrayList<ScalarSymbol>();
+    		for (String name : cached.symbols.scalarNames) {
+    			scalars.add(new ScalarSymbol(name));
+    		}//end for
+    		arrays = new ArrayList<ArraySymbol>();
+    		for (String name : cached.symbols.arrayNames) {
+    			arrays.add(new ArraySymbol(name));
+    		}//end for
+    		symbols = cached.symbols;
+    		backings = new ArrayValues[arrays.size()];
+    		program = cached;
+    		bindings = program.newBindings();
+    		if (profiler != null) {
+    			profiler.record(ExpressionProfiler.Phase.BUILD_SYMBOLS, start);
+    		}//end if
+    		return;
+    	}//end if
+    	
+    	program = null;
     	scalars = new ArrayList<ScalarSymbol>();
     	arrays = new ArrayList<ArraySymbol>();
+    	symbols = new SymbolTable();
     	//A scalar and an array which I can use to manipulate info here.
     	
 	    Stack<String> symb= new Stack<String>();
@@ -85,42 +166,44 @@ public class Expression {
 				//Looks for opening bracket
 				token = symb.pop();
 				//pops again
-				ArraySymbol arrSymb = new ArraySymbol(token);
 				//if there is a bracket the symbol will be treated as an array element.
-				if(arrays.indexOf(arrSymb) == -1) {
-					arrays.add(arrSymb);
+				if(symbols.addArray(token)) {
+					arrays.add(new ArraySymbol(token));
 				}//end if
 				//Adds to the array
 			}//end if 
 			else {
 				//if there is no bracket, that means it is a scalar, and has to be treated as such.
-				ScalarSymbol scalSymb = new ScalarSymbol(token);
-				//creates a new scalar symbol
-				if(scalars.indexOf(scalSymb) == -1) {
-					scalars.add(scalSymb);
+				//creates a new scalar symbol, the table keeps the slots in step with the list
+				if(symbols.addScalar(token)) {
+					scalars.add(new ScalarSymbol(token));
 				}//end if
 			}//end else
 		}//end while
+		backings = new ArrayValues[arrays.size()];
+		if (profiler != null) {
+			profiler.record(ExpressionProfiler.Phase.BUILD_SYMBOLS, start);
+		}//end if
     }//end while
 
 
     
     /**
-     * Loads values for symbols in the expression
+     * Loads values for symbols in the expression. Arrays declared longer than ArrayValues.HEAP_LIMIT
+     * are loaded into a sparse or mapped backing instead of an int[], and have no ArraySymbol values.
      * 
      * @param sc Scanner for values input
      * @throws IOException If there is a problem with the input 
      */
     public void loadSymbolValues(Scanner sc) 
     throws IOException {
+    	long start = profiler == null ? 0 : profiler.start();
         while (sc.hasNextLine()) {
             StringTokenizer st = new StringTokenizer(sc.nextLine().trim());
             int numTokens = st.countTokens();
             String sym = st.nextToken();
-            ScalarSymbol ssymbol = new ScalarSymbol(sym);
-            ArraySymbol asymbol = new ArraySymbol(sym);
-            int ssi = scalars.indexOf(ssymbol);
-            int asi = arrays.indexOf(asymbol);
+            int ssi = symbols.scalarSlot(sym);
+            int asi = symbols.arraySlot(sym);
             if (ssi == -1 && asi == -1) {
             	continue;
             }
@@ -128,31 +211,92 @@ public class Expression {
             if (numTokens == 2) { //scalar symbol
                 scalars.get(ssi).value = num;
             } else { // array symbol
-            	asymbol = arrays.get(asi);
-            	asymbol.values = new int[num];
+            	ArrayValues values = ArrayValues.allocate(num, numTokens - 2);
                 // following are (index,val) pairs
                 while (st.hasMoreTokens()) {
                     String tok = st.nextToken();
                     StringTokenizer stt = new StringTokenizer(tok," (,)");
                     int index = Integer.parseInt(stt.nextToken());
                     int val = Integer.parseInt(stt.nextToken());
-                    asymbol.values[index] = val;              
+                    values.set(index, val);              
                 }
+                setBacking(asi, values.settle());
             }
         }
+        if (profiler != null) {
+        	profiler.record(ExpressionProfiler.Phase.LOAD_VALUES, start);
+        }//end if
+    }
+    
+
+    /**
+     * Loads values for symbols in the expression straight from a channel, in the text format read
+     * by loadSymbolValues(Scanner) or in the binary format written by writeSymbolValues, whichever
+     * the input starts with. Numbers are parsed a buffer at a time without allocating, so large arrays
+     * load much faster than through a Scanner. The channel is read to the end but not closed.
+     * 
+     * @param in Channel for values input, e.g. FileChannel.open(path) or Channels.newChannel(stream)
+     * @throws IOException If there is a problem with the input 
+     */
+    public void loadSymbolValues(ReadableByteChannel in) 
+    throws IOException {
+    	long start = profiler == null ? 0 : profiler.start();
+    	new ValueLoader(this).load(in);
+    	if (profiler != null) {
+    		profiler.record(ExpressionProfiler.Phase.LOAD_VALUES, start);
+    	}//end if
+    }
+    
+    /**
+     * Writes the current values of the symbols to a channel in a compact binary format, which
+     * loadSymbolValues(ReadableByteChannel) reads at I/O speed. The channel is not closed.
+     * 
+     * @param out Channel for values output
+     * @throws IOException If there is a problem with the output
+     */
+    public void writeSymbolValues(WritableByteChannel out) 
+    throws IOException {
+    	for (int n = 0; n < backings.length; n++) {
+    		backing(n);
+    	}//end for
+    	ValueLoader.write(out, this);
     }
     
+    /**
+     * Sets the values of an array symbol, keeping the ArraySymbol's values in step: the int[] of a
+     * dense backing, null for any other.
+     * 
+     * @param slot Slot of the symbol
+     * @param values Values
+     */
+    void setBacking(int slot, ArrayValues values) {
+    	backings[slot] = values;
+    	arrays.get(slot).values = values.dense();
+    }
+    
+    /**
+     * Returns the values of an array symbol, wrapping the ArraySymbol's values if they were set
+     * or replaced directly.
+     * 
+     * @param slot Slot of the symbol
+     * @return Values, or null if none are loaded
+     */
+    ArrayValues backing(int slot) {
+    	int[] values = arrays.get(slot).values;
+    	ArrayValues backing = backings[slot];
+    	if (values != null && (backing == null || backing.dense() != values)) {
+    		backing = backings[slot] = ArrayValues.of(values);
+    	}//end if
+    	else if (values == null && backing != null && backing.dense() != null) {
+    		backing = backings[slot] = null;
+    	}//end else if
+    	return backing;
+    }
 
-	private ArraySymbol arr(String name) {
-		//checks for the value in the array
-		for (int n = 0; n < arrays.size(); n++) {
-			//looks through the array
-			if (arrays.get(n).name.equals(name)){
-				//finds the value and returns it
-				return arrays.get(n);
-			}
-		}
-		return null;
+	private ArrayValues arr(String name) {
+		//looks up the slot of the array
+		int slot = symbols.arraySlot(name);
+		return slot == -1 ? null : backing(slot);
 	}
 	/*The reason this array will be used is to do the math within the array, for example of etest2. 
 	 * This method is necesarry and i had to add it last minute. 
@@ -194,23 +338,413 @@ public class Expression {
 	}//end isBrack
 	
     /**
-     * Evaluates the expression, using RECURSION to evaluate subexpressions and to evaluate array 
-     * subscript expressions.
+     * Compiles the expression into a tree, once, so that evaluate does not have to parse it again.
+     * Builds the symbols first if that has not been done. Values loaded later are picked up by
+     * every evaluation. The compiled tree is taken from, or added to, the shared cache.
+     * 
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public void compile() {
+    	long start = profiler == null ? 0 : profiler.start();
+    	String key = ExpressionCache.key(expr, jitThreshold, optimize, mode);
+    	CompiledExpression compiled = null;
+    	if (scalars == null) {
+    		//looks in the cache first
+    		buildSymbols();
+    		compiled = program;
+    		if (profiler != null) {
+    			//buildSymbols timed itself, so COMPILE starts after it
+    			start = profiler.start();
+    		}//end if
+    	}//end if
+    	else if (cache != null) {
+    		compiled = cache.get(key);
+    	}//end else if
+    	if (compiled == null) {
+    		//symbols built from this same text have the same slots as any cached ones
+    		compiled = new CompiledExpression(expr, symbols, jitThreshold, optimize, mode);
+    		if (cache != null) {
+    			compiled = cache.put(key, compiled);
+    		}//end if
+    	}//end if
+    	program = compiled;
+    	bindings = program.newBindings();
+    	incremental = null;
+    	if (profiler != null) {
+    		profiler.record(ExpressionProfiler.Phase.COMPILE, start);
+    	}//end if
+    }
+    
+    /**
+     * Turns profiling on, with a profiler that records the timings, counts and allocation of
+     * every phase from now on, or off. Off, which is the default, costs nothing.
+     * 
+     * @param profiler Profiler, or null to turn profiling off
+     */
+    public void setProfiler(ExpressionProfiler profiler) {
+    	this.profiler = profiler;
+    }
+    
+    /**
+     * Returns the profiler set with setProfiler.
+     * 
+     * @return Profiler, or null if profiling is off
+     */
+    public ExpressionProfiler getProfiler() {
+    	return profiler;
+    }
+    
+    /**
+     * Returns the compiled form of this expression, compiling it first if needed. An Expression holds
+     * symbol values and is meant for one thread; the compiled form holds none, and can be evaluated
+     * by many threads at once, each with its own Bindings.
+     * 
+     * @return Compiled expression
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public CompiledExpression getCompiled() {
+    	if (program == null) {
+    		compile();
+    	}//end if
+    	return program;
+    }
+    
+    /**
+     * Returns the cache of compiled expressions shared by all Expressions, to read its hit rate.
+     * 
+     * @return The shared cache, or null if caching is turned off
+     */
+    public static ExpressionCache getCache() {
+    	return cache;
+    }
+    
+    /**
+     * Sets the number of evaluations after which evaluate switches from walking the compiled tree
+     * to a method handle compiled from it, which the JVM can inline. Takes effect at the next compile.
+     * 
+     * @param threshold Number of evaluations, 0 to switch right away, negative to never switch
+     */
+    public void setJitThreshold(int threshold) {
+    	jitThreshold = threshold;
+    	program = null;
+    }
+    
+    /**
+     * Turns the optimizer on or off. When on, which is the default, compile folds constant subexpressions,
+     * simplifies exact identities such as x*1, and computes repeated subexpressions only once per evaluation.
+     * Either way, evaluate gives the same results bit for bit, though when more than one subexpression
+     * throws, which exception comes out first may differ. Takes effect at the next compile.
+     * 
+     * @param optimize Whether to optimize
+     */
+    public void setOptimize(boolean optimize) {
+    	this.optimize = optimize;
+    	program = null;
+    }
+    
+    /**
+     * Evaluates the expression with the current symbol values. The expression is compiled on the
+     * first call, every call after that walks the compiled tree without allocating, so the
+     * expression can be evaluated again after new values are loaded.
      * 
      * @return Result of evaluation
      */
-	
     public float evaluate() {
-		for(int n = 0; n < this.scalars.size(); n++) {
-			//checks scalars 
-			expr = expr.replace(this.scalars.get(n).name, "" + this.scalars.get(n).value);
-			//Sets expression to an expression that can be used in the next evaluate method
-		}//end for
-		expr = this.evaluate(expr);
-		return Float.parseFloat(expr);
+    	compileFor(EvalMode.FLOAT);
+    	ExpressionProfiler p = profiler;
+    	if (p != null) {
+    		p.beginEvaluation();
+    	}//end if
+    	try {
+    		loadBindings();
+    		return program.evaluate(bindings);
+    	} finally {
+    		//an evaluation that throws is still reported whole, not left for the next one to finish
+    		if (p != null) {
+    			p.endEvaluation(false);
+    		}//end if
+    	}
+    }
+    
+    /**
+     * Evaluates the expression with the current symbol values in double arithmetic, without
+     * the float rounding of evaluate. Allocates nothing once compiled.
+     * 
+     * @return Result of evaluation
+     */
+    public double evaluateDouble() {
+    	compileFor(EvalMode.DOUBLE);
+    	loadBindings();
+    	return program.evaluateDouble(bindings);
+    }
+    
+    /**
+     * Evaluates the expression with the current symbol values in long arithmetic. Division 
+     * truncates toward zero. Allocates nothing once compiled.
+     * 
+     * @return Result of evaluation
+     * @throws IllegalArgumentException If the expression has a constant that is not an integer
+     * @throws ArithmeticException On division by zero or overflow
+     */
+    public long evaluateLong() {
+    	compileFor(EvalMode.LONG);
+    	loadBindings();
+    	return program.evaluateLong(bindings);
+    }
+    
+    /**
+     * Evaluates the expression with the current symbol values in BigDecimal arithmetic. Sums,
+     * differences and products are exact, quotients are rounded to 34 significant digits.
+     * 
+     * @return Result of evaluation
+     * @throws ArithmeticException On division by zero
+     */
+    public BigDecimal evaluateExact() {
+    	compileFor(EvalMode.EXACT);
+    	loadBindings();
+    	return program.evaluateExact(bindings);
+    }
+    
+    /**
+     * Evaluates the expression with the current symbol values, recomputing only the subexpressions
+     * that depend on scalars whose values changed, or arrays whose values were replaced, since the
+     * last call. The result is the same as that of evaluate. A value changed in place in an array
+     * is not noticed; set it with getIncremental().setArrayElement instead, which writes it through.
+     * 
+     * @return Result of evaluation
+     */
+    public float evaluateIncremental() {
+    	return getIncremental().evaluate();
+    }
+    
+    /**
+     * Returns the incremental evaluator used by evaluateIncremental, compiling the expression
+     * first if needed, with the current symbol values set in it.
+     * 
+     * @return Incremental evaluator
+     */
+    public IncrementalEvaluator getIncremental() {
+    	compileFor(EvalMode.FLOAT);
+    	if (incremental == null) {
+    		incremental = new IncrementalEvaluator(program);
+    	}//end if
+    	//only values that changed mark anything dirty
+    	for (int n = 0; n < scalars.size(); n++) {
+    		incremental.setScalar(n, scalars.get(n).value);
+    	}//end for
+    	for (int n = 0; n < arrays.size(); n++) {
+    		incremental.setArray(n, backing(n));
+    	}//end for
+    	return incremental;
+    }
+    
+    /**
+     * Compiles the expression for an arithmetic, unless it already is.
+     */
+    private void compileFor(EvalMode mode) {
+    	if (program == null || program.mode != mode) {
+    		this.mode = mode;
+    		compile();
+    	}//end if
+    }
+    
+    /**
+     * Copies the current symbol values into the bindings of the compiled expression.
+     */
+    private void loadBindings() {
+    	for (int n = 0; n < bindings.scalars.length; n++) {
+    		bindings.scalars[n] = scalars.get(n).value;
+    	}//end for
+    	for (int n = 0; n < bindings.arrays.length; n++) {
+    		bindings.arrays[n] = backing(n);
+    	}//end for
+    }
+    
+    /**
+     * Evaluates the expression once per row of scalar values, e.g. over a table with one column per
+     * scalar symbol. Rows are evaluated a chunk at a time in tight loops, with the same float operations
+     * as evaluate, so each result equals what evaluate would give for that row's values.
+     * Array values, and the values of scalars that have no column, are the ones currently loaded.
+     * 
+     * @param columns Values of scalar symbols by name, one array per symbol, all of the same length
+     * @return Result of evaluation for each row
+     * @throws IllegalArgumentException If a name is not a scalar symbol, or the columns differ in length
+     */
+    public float[] evaluateBatch(Map<String,int[]> columns) {
+    	return evaluateBatch(columns, false);
+    }
+    
+    /**
+     * Evaluates the expression once per row of scalar values, like evaluateBatch(columns), 
+     * optionally splitting the rows into chunks evaluated in parallel in the fork-join common pool.
+     * 
+     * @param columns Values of scalar symbols by name, one array per symbol, all of the same length
+     * @param parallel Whether to evaluate chunks of rows in parallel
+     * @return Result of evaluation for each row
+     * @throws IllegalArgumentException If a name is not a scalar symbol, or the columns differ in length
+     */
+    public float[] evaluateBatch(Map<String,int[]> columns, boolean parallel) {
+    	compileFor(EvalMode.FLOAT);
+    	loadBindings();
+    	int rows = -1;
+    	int[][] bySlot = new int[scalars.size()][];
+    	for (Map.Entry<String,int[]> e : columns.entrySet()) {
+    		int slot = symbols.scalarSlot(e.getKey());
+    		if (slot == -1) {
+    			throw new IllegalArgumentException("No scalar symbol " + e.getKey());
+    		}//end if
+    		if (rows != -1 && e.getValue().length != rows) {
+    			throw new IllegalArgumentException("Column " + e.getKey() + " has " + e.getValue().length + " rows, expected " + rows);
+    		}//end if
+    		rows = e.getValue().length;
+    		bySlot[slot] = e.getValue();
+    	}//end for
+    	if (rows == -1) {
+    		throw new IllegalArgumentException("No columns");
+    	}//end if
+    	return program.evaluateBatch(bindings, bySlot, rows, parallel);
+    }
+    
+    /**
+     * Evaluates the expression element-wise across whole arrays, e.g. A[i]*2 + B[i] for every i,
+     * with i running over the indexes of the shortest array loaded. Large ranges are split across
+     * the fork-join common pool.
+     * 
+     * @param index Name of the scalar that is the index
+     * @return Result of evaluation for each index
+     * @throws IllegalArgumentException If the index is not a scalar symbol, or no array values are loaded
+     */
+    public float[] evaluateMap(String index) {
+    	int length = -1;
+    	for (int n = 0; n < arrays.size(); n++) {
+    		ArrayValues values = backing(n);
+    		if (values != null && (length == -1 || values.length() < length)) {
+    			length = values.length();
+    		}//end if
+    	}//end for
+    	if (length == -1) {
+    		throw new IllegalArgumentException("No array values loaded");
+    	}//end if
+    	return evaluateMap(index, length, true);
+    }
+    
+    /**
+     * Evaluates the expression element-wise: once for each value of an index scalar from 0 to
+     * length-1, with the other symbols at their current values. Rows are evaluated a chunk at a 
+     * time in tight loops, the same way as evaluateBatch, and a subscript that is just the index 
+     * reads a run of the array. Each result equals what evaluate would give with the index set 
+     * to that value.
+     * 
+     * @param index Name of the scalar that is the index
+     * @param length Number of index values
+     * @param parallel Whether to evaluate chunks of index values in parallel in the fork-join common pool
+     * @return Result of evaluation for each index value
+     * @throws IllegalArgumentException If the index is not a scalar symbol
+     */
+    public float[] evaluateMap(String index, int length, boolean parallel) {
+    	compileFor(EvalMode.FLOAT);
+    	int slot = symbols.scalarSlot(index);
+    	if (slot == -1) {
+    		throw new IllegalArgumentException("No scalar symbol " + index);
+    	}//end if
+    	loadBindings();
+    	return program.evaluateMap(bindings, slot, length, parallel);
+    }
+    
+    /**
+     * Evaluates the expression, using RECURSION to evaluate subexpressions and to evaluate array 
+     * subscript expressions. This is the original evaluator, which substitutes values into the
+     * text and rewrites it until it reduces to a number. It is kept to compare against.
+     * 
+     * @return Result of evaluation
+     */
+    float evaluateByRewriting() {
+    	ExpressionProfiler p = profiler;
+    	long start = 0;
+    	if (p != null) {
+    		p.beginEvaluation();
+    		start = p.start();
+    	}//end if
+    	try {
+    		String expr = this.expr;
+    		for(int n = 0; n < this.scalars.size(); n++) {
+    			//checks scalars 
+    			expr = expr.replace(this.scalars.get(n).name, "" + this.scalars.get(n).value);
+    			//Sets expression to an expression that can be used in the next evaluate method
+    		}//end for
+    		if (p != null) {
+    			p.recordEvaluation(ExpressionProfiler.Phase.SUBSTITUTE, start);
+    		}//end if
+    		expr = this.evaluate(expr);
+    		return this.parse(expr);
+    	} finally {
+    		if (p != null) {
+    			p.endEvaluation(true);
+    		}//end if
+    	}
+    }
+    
+    /**
+     * Parses a number out of the text, timed if profiling is on.
+     */
+    private float parse(String s) {
+    	ExpressionProfiler p = profiler;
+    	if (p == null) {
+    		return Float.parseFloat(s);
+    	}//end if
+    	long start = p.start();
+    	try {
+    		return Float.parseFloat(s);
+    	} finally {
+    		p.parsed(start);
+    	}
+    }
+    
+    /**
+     * Formats a result to put back into the text, timed if profiling is on.
+     */
+    private String format(float f) {
+    	ExpressionProfiler p = profiler;
+    	if (p == null) {
+    		return "" + f;
+    	}//end if
+    	long start = p.start();
+    	String s = "" + f;
+    	p.formatted(s, start);
+    	return s;
+    }
+    
+    /**
+     * Formats an array value to put into the text, timed if profiling is on.
+     */
+    private String format(int i) {
+    	ExpressionProfiler p = profiler;
+    	if (p == null) {
+    		return "" + i;
+    	}//end if
+    	long start = p.start();
+    	String s = "" + i;
+    	p.formatted(s, start);
+    	return s;
+    }
+    
+    /**
+     * Rewrites the text one step, recording the recursion if profiling is on.
+     */
+    private String evaluate(String expr) {
+    	ExpressionProfiler p = profiler;
+    	if (p == null) {
+    		return rewrite(expr);
+    	}//end if
+    	p.enter(expr == null ? "" : expr);
+    	try {
+    		return rewrite(expr);
+    	} finally {
+    		p.exit();
+    	}
     }
     
-	private String evaluate(String expr) {		
+	private String rewrite(String expr) {		
 		if(expr == null || expr.length() == 0) {
 			return "0";
 		}//end if
@@ -295,7 +829,7 @@ public class Expression {
 						}//end while
 
 						try {
-							first = Float.parseFloat(expr.substring(index1, n));
+							first = this.parse(expr.substring(index1, n));
 							//Sets a value to first dependant on the initial index1, that was found in the while loop iterations
 						}//end try
 						catch(Exception e) {
@@ -304,7 +838,7 @@ public class Expression {
 						}//end exception catch
 
 						try {
-							second = Float.parseFloat(expr.substring(n + 1, index2 + 1));
+							second = this.parse(expr.substring(n + 1, index2 + 1));
 							//Sets a value to second dependent on the initial index2, that was found in the while loop iterations
 						}//end try
 						catch(Exception e) {
@@ -321,13 +855,13 @@ public class Expression {
 						}//end if
 
 						if(this.mult(expr.charAt(n))) {
-							f = "" + first * second;
+							f = this.format(first * second);
 							//does multiplication
 
 						}//end if
 						
 						else {
-							f = "" + first / second;
+							f = this.format(first / second);
 							//does division
 						}//end else
 
@@ -373,7 +907,7 @@ public class Expression {
 						}//end while
 
 						try {
-							first = Float.parseFloat(expr.substring(index1, n));
+							first = this.parse(expr.substring(index1, n));
 							//Sets a value to first dependent on the initial index1, that was found in the while loop iterations
 						}//end try 
 						catch(Exception e) {
@@ -382,7 +916,7 @@ public class Expression {
 						}//end catch
 						
 						try {
-							second = Float.parseFloat(expr.substring(n + 1, index2 + 1));
+							second = this.parse(expr.substring(n + 1, index2 + 1));
 							//Sets a value to second dependent on the initial index1, that was found in the while loop iterations
 						}//end try 
 						catch(Exception e) {
@@ -399,12 +933,12 @@ public class Expression {
 						}//end if
 
 						if(this.add(expr.charAt(n))) {
-							f = "" + (first + second);
+							f = this.format(first + second);
 							//addition
 						}//end if
 						
 						else {
-							f = "" + (first - second);
+							f = this.format(first - second);
 							//subtraction
 						}//end else
 
@@ -525,7 +1059,7 @@ public class Expression {
 						
 						String beg = expr.substring(0, x);
 						//first part of the expression
-						String mid = "" + this.arr(curr).values[(int)Float.parseFloat(this.evaluate(expr.substring(n, y)))];
+						String mid = this.format(this.arr(curr).get((int)this.parse(this.evaluate(expr.substring(n, y)))));
 						/* Second part of the equation which uses recursion. this is to ensure that it will go through as many as times needed 
 						 * using the new indexes.  Since it uses an array it must first find the index of the array,
 						 * then concat the float that was used previously as value to an int, so it can be used recursively in evaluate
@@ -546,7 +1080,7 @@ public class Expression {
 		}//end else
 		return "";
 		//Since there is recursion, this will print nothing at the end
-	}//end evaluate
+	}//end rewrite
 
     /**
      * Utility method, prints the symbols in the scalars list
@@ -561,8 +1095,10 @@ public class Expression {
      * Utility method, prints the symbols in the arrays list
      */
     public void printArrays() {
-    		for (ArraySymbol as: arrays) {
-    			System.out.println(as);
+    		for (int n = 0; n < arrays.size(); n++) {
+    			ArraySymbol as = arrays.get(n);
+    			//sparse and mapped arrays have no values in the symbol
+    			System.out.println(as.values == null && backings[n] != null ? as.name + "=" + backings[n] : as);
     		}
     }
 
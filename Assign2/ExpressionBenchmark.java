@@ -0,0 +1,204 @@
+package apps;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Benchmark driver for Expression. Generates expressions of three shapes in sizes 1, 4, 16, ...
+ * up to a maximum, and reports the time and bytes allocated per call of buildSymbols,
+ * loadSymbolValues (from a Scanner and from a channel), evaluate, and the original string
+ * rewriting evaluator, so the cost of each can be followed as expressions grow:
+ * <ul>
+ * <li>chain: a long run of operators, a + b * c + d / e + ...</li>
+ * <li>parens: deep parenthesis nesting, ((((a+b)*c)+d)/e)...</li>
+ * <li>subscripts: nested array subscripts, A[B[A[B[i]]]]...</li>
+ * </ul>
+ * Every measurement runs warm-up rounds first, so the numbers are steady-state and can be compared
+ * against an earlier run.
+ * <pre>
+ *     java apps.ExpressionBenchmark [max-size] [array-length]
+ * </pre>
+ * The max size is the number of operators, parentheses or subscripts, 256 by default. Each array
+ * is loaded with array-length (index,val) pairs, 1000 by default.
+ *
+ * @author runb-cs112
+ *
+ */
+public class ExpressionBenchmark {
+
+	static final int WARMUP_ROUNDS = 5;
+
+	static final int MEASURED_ROUNDS = 10;
+
+	/**
+	 * Nanoseconds a measured round should take, the number of calls per round is picked to fit.
+	 */
+	static final long ROUND_NANOS = 20000000;
+
+	static final String SCALARS = "abcdefghijklmnopqrstuvwxyz";
+
+	/**
+	 * Operators of the generated expressions. No minus, the rewriting evaluator mishandles
+	 * negative intermediate results.
+	 */
+	static final char[] OPERATORS = {'+', '*', '+', '/'};
+
+	/**
+	 * Keeps results alive so the JIT cannot drop the measured work.
+	 */
+	static volatile Object sink;
+
+	static volatile float floatSink;
+
+	/**
+	 * One call of the operation being measured.
+	 */
+	interface Op {
+		void run() throws IOException;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int max = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		int arrayLength = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		Random rand = new Random(112);
+		String values = values(rand, arrayLength);
+		for (int size = 1; size <= max; size *= 4) {
+			run("chain/" + size, chain(size), values);
+		}//end for
+		for (int size = 1; size <= max; size *= 4) {
+			run("parens/" + size, parens(size), values);
+		}//end for
+		for (int size = 1; size <= max; size *= 4) {
+			run("subscripts/" + size, subscripts(size), values);
+		}//end for
+	}
+
+	/**
+	 * Runs all measurements on one expression and prints one line per measurement.
+	 */
+	static void run(final String name, final String expr, final String values) throws IOException {
+		final byte[] valueBytes = values.getBytes("US-ASCII");
+		//before anything compiles this text, so the symbols are not taken from the cache
+		measure(name, "buildSymbols", new Op() {
+			public void run() {
+				Expression e = new Expression(expr);
+				e.buildSymbols();
+				sink = e;
+			}
+		});
+		final Expression e = new Expression(expr);
+		e.buildSymbols();
+		measure(name, "load/Scanner", new Op() {
+			public void run() throws IOException {
+				e.loadSymbolValues(new Scanner(values));
+			}
+		});
+		measure(name, "load/channel", new Op() {
+			public void run() throws IOException {
+				e.loadSymbolValues(Channels.newChannel(new ByteArrayInputStream(valueBytes)));
+			}
+		});
+		measure(name, "evaluate", new Op() {
+			public void run() {
+				floatSink = e.evaluate();
+			}
+		});
+		measure(name, "evaluateByRewriting", new Op() {
+			public void run() {
+				floatSink = e.evaluateByRewriting();
+			}
+		});
+	}
+
+	/**
+	 * Measures an operation, calling it as many times per round as fit in ROUND_NANOS.
+	 */
+	static void measure(String name, String what, Op op) throws IOException {
+		long t = System.nanoTime();
+		op.run();
+		long once = Math.max(System.nanoTime() - t, 1);
+		long calls = Math.max(1, Math.min(ROUND_NANOS / once, 1000000));
+		long nanos = 0, bytes = 0;
+		for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+			long a = ExpressionProfiler.allocatedBytes();
+			t = System.nanoTime();
+			for (long i = 0; i < calls; i++) {
+				op.run();
+			}//end for
+			long elapsed = System.nanoTime() - t;
+			if (round >= WARMUP_ROUNDS) {
+				nanos += elapsed;
+				bytes += ExpressionProfiler.allocatedBytes() - a;
+			}//end if
+		}//end for
+		long ops = MEASURED_ROUNDS * calls;
+		report(name, what, (double) nanos / ops, (double) bytes / ops);
+	}
+
+	static void report(String expr, String what, double nanos, double bytes) {
+		System.out.println(String.format("%-15s %-20s %14.1f ns/op  %12.1f bytes allocated", expr, what, nanos, bytes));
+	}
+
+	/**
+	 * Returns a run of size operators over scalars.
+	 */
+	static String chain(int size) {
+		StringBuilder sb = new StringBuilder().append(SCALARS.charAt(0));
+		for (int i = 1; i <= size; i++) {
+			sb.append(' ').append(OPERATORS[i % OPERATORS.length]).append(' ').append(SCALARS.charAt(i % SCALARS.length()));
+		}//end for
+		return sb.toString();
+	}
+
+	/**
+	 * Returns size nested pairs of parentheses, each around the ones inside and one more operator.
+	 */
+	static String parens(int size) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			sb.append('(');
+		}//end for
+		sb.append(SCALARS.charAt(0));
+		for (int i = 1; i <= size; i++) {
+			sb.append(OPERATORS[i % OPERATORS.length]).append(SCALARS.charAt(i % SCALARS.length())).append(')');
+		}//end for
+		return sb.toString();
+	}
+
+	/**
+	 * Returns size nested subscripts, alternating between arrays A and B, around the scalar i.
+	 */
+	static String subscripts(int size) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			sb.append(i % 2 == 0 ? "A[" : "B[");
+		}//end for
+		sb.append('i');
+		for (int i = 0; i < size; i++) {
+			sb.append(']');
+		}//end for
+		return sb.append("+a").toString();
+	}
+
+	/**
+	 * Returns values for every scalar, 1 to 9, and arrays A and B of the given length whose
+	 * values are indexes into each other.
+	 */
+	static String values(Random rand, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < SCALARS.length(); i++) {
+			sb.append(SCALARS.charAt(i)).append(' ').append(1 + rand.nextInt(9)).append('\n');
+		}//end for
+		for (String array : new String[] {"A", "B"}) {
+			sb.append(array).append(' ').append(length);
+			for (int i = 0; i < length; i++) {
+				sb.append(" (").append(i).append(',').append(rand.nextInt(length)).append(')');
+			}//end for
+			sb.append('\n');
+		}//end for
+		return sb.toString();
+	}
+}
@@ -0,0 +1,160 @@
+package apps;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class implements a bounded cache of compiled expressions, keyed by the tokens of the
+ * expression, that evicts the least recently used entry when it is full. A compiled
+ * expression holds no symbol values, so one entry can be shared by any number of Expressions,
+ * on any number of threads: each Expression keeps its own values.
+ * All methods are thread-safe. An expression is compiled outside the lock, so a slow compile
+ * does not hold up lookups of other expressions.
+ * 
+ * @author runb-cs112
+ *
+ */
+public class ExpressionCache {
+	
+	private final int capacity;
+	
+	private final LinkedHashMap<String,CompiledExpression> map;
+	
+	private long hits, misses, evictions;
+	
+	/**
+	 * Initializes an empty cache.
+	 * 
+	 * @param capacity Maximum number of compiled expressions kept
+	 */
+	public ExpressionCache(int capacity) {
+		this.capacity = capacity;
+		map = new LinkedHashMap<String,CompiledExpression>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String,CompiledExpression> eldest) {
+				if (size() > ExpressionCache.this.capacity) {
+					evictions++;
+					return true;
+				}//end if
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the cache key of an expression: its tokens, each followed by a space, after the
+	 * compile settings, since they change the compiled form. No token holds a space, so
+	 * expressions share a key only if they have the same tokens: "a b" and "ab" do not.
+	 */
+	static String key(String expr, int jitThreshold, boolean optimize, EvalMode mode) {
+		StringBuilder sb = new StringBuilder(expr.length() + 16);
+		sb.append(optimize ? 'o' : 'p').append(mode.ordinal()).append(jitThreshold).append(':');
+		for (String token : ExprParser.tokenize(expr)) {
+			sb.append(token).append(' ');
+		}//end for
+		return sb.toString();
+	}
+	
+	/**
+	 * Looks up a compiled expression, and counts a hit or a miss.
+	 * 
+	 * @param key Key from key()
+	 * @return Compiled expression, or null if it is not in the cache
+	 */
+	synchronized CompiledExpression get(String key) {
+		CompiledExpression program = map.get(key);
+		if (program == null) {
+			misses++;
+		}//end if
+		else {
+			hits++;
+		}//end else
+		return program;
+	}
+	
+	/**
+	 * Adds a compiled expression, unless another thread added one for the same key first.
+	 * 
+	 * @param key Key from key()
+	 * @param program Compiled expression
+	 * @return The compiled expression now in the cache for the key
+	 */
+	synchronized CompiledExpression put(String key, CompiledExpression program) {
+		CompiledExpression existing = map.get(key);
+		if (existing != null) {
+			return existing;
+		}//end if
+		map.put(key, program);
+		return program;
+	}
+	
+	/**
+	 * Returns the number of lookups that found a compiled expression.
+	 * 
+	 * @return Number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the number of lookups that had to compile.
+	 * 
+	 * @return Number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+	
+	/**
+	 * Returns the number of entries evicted to make room.
+	 * 
+	 * @return Number of evictions
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+	
+	/**
+	 * Returns the fraction of lookups that were hits.
+	 * 
+	 * @return Hit rate between 0 and 1, 0 if there were no lookups
+	 */
+	public synchronized double hitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+	
+	/**
+	 * Returns the number of compiled expressions in the cache.
+	 * 
+	 * @return Number of entries
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+	
+	/**
+	 * Returns the maximum number of compiled expressions kept.
+	 * 
+	 * @return Capacity
+	 */
+	public int capacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Removes all entries. The counters are kept.
+	 */
+	public synchronized void clear() {
+		map.clear();
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return String.format("%d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions", 
+				map.size(), capacity, hits, misses, 100 * hitRate(), evictions);
+	}
+}
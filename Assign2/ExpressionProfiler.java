@@ -0,0 +1,302 @@
+package apps;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * This class records where the time of an Expression goes: time per phase, operation counts,
+ * recursion depth and allocation, for each evaluation and added up over all of them. Set one on
+ * an Expression with setProfiler to turn profiling on; with none set, which is the default, the
+ * hooks in Expression are a null check and nothing else.
+ * <p>
+ * For the string rewriting evaluator the phases say whether symbol substitution, bracket
+ * recursion and rewriting, parsing numbers out of the text, or formatting results back into it
+ * takes the time. A profiler is meant for one thread.
+ *
+ * @author runb-cs112
+ *
+ */
+public class ExpressionProfiler {
+
+	/**
+	 * Phases timed. Phases in an evaluation are reported per evaluation, the others only in the totals.
+	 */
+	public enum Phase {
+		/** buildSymbols */
+		BUILD_SYMBOLS,
+		/** loadSymbolValues */
+		LOAD_VALUES,
+		/** Compiling to a tree, or taking the tree from the cache, less any buildSymbols it calls */
+		COMPILE,
+		/** Evaluating the compiled tree, with copying the symbol values into the bindings */
+		EVALUATE,
+		/** Rewriting evaluator: putting scalar values into the text */
+		SUBSTITUTE,
+		/** Rewriting evaluator: finding brackets and rebuilding the text, less parsing and formatting */
+		REWRITE,
+		/** Rewriting evaluator: Float.parseFloat of numbers in the text */
+		PARSE,
+		/** Rewriting evaluator: formatting results back into the text */
+		FORMAT
+	}
+
+	/**
+	 * Measurements of one evaluation, or totals of many.
+	 */
+	public static class Report {
+
+		/**
+		 * Nanoseconds by phase, indexed by Phase ordinal.
+		 */
+		public final long[] nanos = new long[Phase.values().length];
+
+		/**
+		 * Number of evaluations measured, 1 for the report of one evaluation.
+		 */
+		public long evaluations;
+
+		/**
+		 * Calls of the recursive rewriting step, and the deepest recursion.
+		 */
+		public long calls;
+
+		public int maxDepth;
+
+		/**
+		 * Numbers parsed from and formatted into the text.
+		 */
+		public long parses, formats;
+
+		/**
+		 * Characters in the strings the rewriting evaluator built, and the bytes those take,
+		 * estimated at 40 bytes per string plus one per character.
+		 */
+		public long charsBuilt, estimatedBytes;
+
+		/**
+		 * Bytes allocated by the thread during evaluation, as measured by the JVM, -1 if it cannot tell.
+		 */
+		public long allocatedBytes = -1;
+
+		/**
+		 * Returns the nanoseconds spent in a phase.
+		 *
+		 * @param phase Phase
+		 * @return Nanoseconds
+		 */
+		public long nanos(Phase phase) {
+			return nanos[phase.ordinal()];
+		}
+
+		void clear() {
+			for (int i = 0; i < nanos.length; i++) {
+				nanos[i] = 0;
+			}//end for
+			evaluations = calls = parses = formats = charsBuilt = estimatedBytes = 0;
+			maxDepth = 0;
+			allocatedBytes = threads == null ? -1 : 0;
+		}
+
+		void add(Report r) {
+			for (int i = 0; i < nanos.length; i++) {
+				nanos[i] += r.nanos[i];
+			}//end for
+			evaluations += r.evaluations;
+			calls += r.calls;
+			maxDepth = Math.max(maxDepth, r.maxDepth);
+			parses += r.parses;
+			formats += r.formats;
+			charsBuilt += r.charsBuilt;
+			estimatedBytes += r.estimatedBytes;
+			allocatedBytes = allocatedBytes == -1 || r.allocatedBytes == -1 ? -1 : allocatedBytes + r.allocatedBytes;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(evaluations).append(" evaluation(s)\n");
+			for (Phase phase : Phase.values()) {
+				if (nanos(phase) > 0) {
+					sb.append(String.format("  %-14s %14d ns%n", phase, nanos(phase)));
+				}//end if
+			}//end for
+			if (calls > 0) {
+				sb.append(String.format("  %d calls, depth %d, %d parses, %d formats, %d chars built (~%d bytes)%n",
+						calls, maxDepth, parses, formats, charsBuilt, estimatedBytes));
+			}//end if
+			if (allocatedBytes >= 0) {
+				sb.append("  ").append(allocatedBytes).append(" bytes allocated\n");
+			}//end if
+			return sb.toString();
+		}
+	}
+
+	static final com.sun.management.ThreadMXBean threads = allocationBean();
+
+	/**
+	 * Report of the evaluation in progress, or the last one.
+	 */
+	private final Report current = new Report();
+
+	private final Report totals = new Report();
+
+	private long startNanos, startBytes;
+
+	private int depth;
+
+	/**
+	 * Initializes a profiler with nothing recorded.
+	 */
+	public ExpressionProfiler() {
+		current.clear();
+		totals.clear();
+	}
+
+	/**
+	 * Returns the measurements of the last evaluation.
+	 *
+	 * @return A copy of the report
+	 */
+	public Report getLastReport() {
+		Report copy = new Report();
+		copy.clear();
+		copy.add(current);
+		return copy;
+	}
+
+	/**
+	 * Returns the measurements added up over all evaluations since this profiler was made or reset,
+	 * with the time of the phases outside evaluation.
+	 *
+	 * @return A copy of the totals
+	 */
+	public Report getTotals() {
+		Report copy = new Report();
+		copy.clear();
+		copy.add(totals);
+		return copy;
+	}
+
+	/**
+	 * Forgets everything recorded.
+	 */
+	public void reset() {
+		current.clear();
+		totals.clear();
+	}
+
+	/**
+	 * Returns the time now, to pass to record at the end of a phase.
+	 */
+	long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records a phase outside an evaluation, started at the given time.
+	 */
+	void record(Phase phase, long start) {
+		totals.nanos[phase.ordinal()] += System.nanoTime() - start;
+	}
+
+	/**
+	 * Starts the report of an evaluation.
+	 */
+	void beginEvaluation() {
+		current.clear();
+		current.evaluations = 1;
+		depth = 0;
+		startBytes = allocatedBytes();
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Records a phase of the evaluation in progress, started at the given time.
+	 */
+	void recordEvaluation(Phase phase, long start) {
+		current.nanos[phase.ordinal()] += System.nanoTime() - start;
+	}
+
+	/**
+	 * Ends the report of an evaluation and adds it to the totals. Called from a finally block, so
+	 * that an evaluation that throws is reported too.
+	 *
+	 * @param rewriting Whether it was the rewriting evaluator, whose time not in another phase is REWRITE
+	 */
+	void endEvaluation(boolean rewriting) {
+		long elapsed = System.nanoTime() - startNanos;
+		if (threads != null) {
+			current.allocatedBytes = allocatedBytes() - startBytes;
+		}//end if
+		if (rewriting) {
+			current.nanos[Phase.REWRITE.ordinal()] = elapsed - current.nanos(Phase.SUBSTITUTE)
+					- current.nanos(Phase.PARSE) - current.nanos(Phase.FORMAT);
+		}//end if
+		else {
+			current.nanos[Phase.EVALUATE.ordinal()] = elapsed;
+		}//end else
+		totals.add(current);
+	}
+
+	/**
+	 * Records entering the recursive rewriting step with a newly built text.
+	 */
+	void enter(String expr) {
+		current.calls++;
+		depth++;
+		current.maxDepth = Math.max(current.maxDepth, depth);
+		built(expr);
+	}
+
+	void exit() {
+		depth--;
+	}
+
+	/**
+	 * Records a number parsed, started at the given time.
+	 */
+	void parsed(long start) {
+		current.parses++;
+		recordEvaluation(Phase.PARSE, start);
+	}
+
+	/**
+	 * Records a number formatted, started at the given time.
+	 */
+	void formatted(String s, long start) {
+		current.formats++;
+		recordEvaluation(Phase.FORMAT, start);
+		built(s);
+	}
+
+	/**
+	 * Records a string built by the rewriting evaluator.
+	 */
+	void built(String s) {
+		current.charsBuilt += s.length();
+		current.estimatedBytes += 40 + s.length();
+	}
+
+	/**
+	 * Returns the bytes allocated so far by this thread, or 0 if the JVM cannot tell.
+	 */
+	static long allocatedBytes() {
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Returns the JVM's thread bean with allocation counting turned on, or null if it cannot count.
+	 */
+	static com.sun.management.ThreadMXBean allocationBean() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}//end if
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!bean.isThreadAllocatedMemorySupported()) {
+			return null;
+		}//end if
+		bean.setThreadAllocatedMemoryEnabled(true);
+		return bean;
+	}
+}
@@ -0,0 +1,415 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * This class evaluates a compiled expression over and over while only some symbol values change,
+ * recomputing only the subexpressions that depend on them. It keeps the value of every node of the
+ * compiled tree. Setting a scalar marks the nodes that read it, and their ancestors, dirty; setting
+ * an array element marks only the array element nodes whose last subscript was that index. The next
+ * evaluate recomputes the dirty nodes, children first, from the kept values of their children, so an
+ * update costs time proportional to the part of the expression it affects, not to the whole of it.
+ * Results are the same, bit for bit, as CompiledExpression.evaluate with the same values.
+ * <p>
+ * An evaluator holds symbol values, so it is meant for one thread. It works on expressions compiled
+ * for EvalMode.FLOAT.
+ *
+ * @author runb-cs112
+ *
+ */
+public class IncrementalEvaluator {
+
+	private static final byte CONSTANT = 0, SCALAR = 1, ELEMENT = 2, NEGATE = 3, BINARY = 4;
+
+	/**
+	 * Kind of each node. Nodes are numbered children first, so recomputing dirty nodes in
+	 * increasing order always finds their children up to date.
+	 */
+	private final byte[] kind;
+
+	/**
+	 * Operator of each binary node.
+	 */
+	private final char[] op;
+
+	/**
+	 * Children of each node: operands of binary and negate nodes, the subscript of array elements,
+	 * -1 for none.
+	 */
+	private final int[] left, right;
+
+	/**
+	 * Symbol slot of each scalar and array element node.
+	 */
+	private final int[] slot;
+
+	/**
+	 * Nodes with each node as a child.
+	 */
+	private final int[][] parents;
+
+	/**
+	 * Scalar nodes by scalar slot, and array element nodes by array slot.
+	 */
+	private final int[][] scalarReaders, arrayReaders;
+
+	/**
+	 * Current value of each node, valid unless the node is dirty.
+	 */
+	private final float[] value;
+
+	/**
+	 * Subscript each array element node last read, so that setting another index leaves it alone.
+	 */
+	private final int[] subscript;
+
+	private final boolean[] dirty;
+
+	/**
+	 * Dirty nodes, the first pendingCount of them, in no particular order.
+	 */
+	private final int[] pending;
+
+	private int pendingCount;
+
+	/**
+	 * Work stack for marking ancestors dirty.
+	 */
+	private final int[] stack;
+
+	private final int root;
+
+	/**
+	 * Symbol values.
+	 */
+	private final Bindings bindings;
+
+	private int recomputed;
+
+	/**
+	 * Initializes an evaluator for a compiled expression, with all scalars zero and no array values.
+	 *
+	 * @param program Expression compiled for EvalMode.FLOAT
+	 * @throws IllegalStateException If the expression is compiled for another mode
+	 */
+	public IncrementalEvaluator(CompiledExpression program) {
+		if (program.mode != EvalMode.FLOAT) {
+			throw new IllegalStateException("Expression is compiled for " + program.mode + " evaluation, not FLOAT");
+		}//end if
+		bindings = program.newBindings();
+
+		//number the nodes children first, temporaries before the nodes that use them
+		ArrayList<ExprNode> nodes = new ArrayList<ExprNode>();
+		IdentityHashMap<ExprNode,Integer> ids = new IdentityHashMap<ExprNode,Integer>();
+		int[] temps = new int[program.temps.length];
+		for (int i = 0; i < temps.length; i++) {
+			temps[i] = number(program.temps[i], nodes, ids, temps);
+		}//end for
+		root = number(program.root, nodes, ids, temps);
+
+		int n = nodes.size();
+		kind = new byte[n];
+		op = new char[n];
+		left = new int[n];
+		right = new int[n];
+		slot = new int[n];
+		value = new float[n];
+		subscript = new int[n];
+		dirty = new boolean[n];
+		pending = new int[n];
+		stack = new int[n];
+		Arrays.fill(left, -1);
+		Arrays.fill(right, -1);
+		int[] parentCount = new int[n];
+		int[] scalarCount = new int[bindings.scalars.length];
+		int[] arrayCount = new int[bindings.arrays.length];
+		for (int id = 0; id < n; id++) {
+			ExprNode node = nodes.get(id);
+			if (node instanceof ExprNode.Constant) {
+				kind[id] = CONSTANT;
+				value[id] = ((ExprNode.Constant) node).value;
+			}//end if
+			else if (node instanceof ExprNode.Scalar) {
+				kind[id] = SCALAR;
+				slot[id] = ((ExprNode.Scalar) node).slot;
+				scalarCount[slot[id]]++;
+			}//end else if
+			else if (node instanceof ExprNode.ArrayElement) {
+				ExprNode.ArrayElement e = (ExprNode.ArrayElement) node;
+				kind[id] = ELEMENT;
+				slot[id] = e.slot;
+				left[id] = child(e.index, ids, temps);
+				arrayCount[slot[id]]++;
+			}//end else if
+			else if (node instanceof ExprNode.Negate) {
+				kind[id] = NEGATE;
+				left[id] = child(((ExprNode.Negate) node).operand, ids, temps);
+			}//end else if
+			else {
+				ExprNode.Binary b = (ExprNode.Binary) node;
+				kind[id] = BINARY;
+				op[id] = b.op;
+				left[id] = child(b.left, ids, temps);
+				right[id] = child(b.right, ids, temps);
+			}//end else
+			if (left[id] != -1) {
+				parentCount[left[id]]++;
+			}//end if
+			if (right[id] != -1) {
+				parentCount[right[id]]++;
+			}//end if
+		}//end for
+
+		parents = new int[n][];
+		for (int id = 0; id < n; id++) {
+			parents[id] = new int[parentCount[id]];
+			parentCount[id] = 0;
+		}//end for
+		scalarReaders = new int[scalarCount.length][];
+		for (int s = 0; s < scalarCount.length; s++) {
+			scalarReaders[s] = new int[scalarCount[s]];
+			scalarCount[s] = 0;
+		}//end for
+		arrayReaders = new int[arrayCount.length][];
+		for (int s = 0; s < arrayCount.length; s++) {
+			arrayReaders[s] = new int[arrayCount[s]];
+			arrayCount[s] = 0;
+		}//end for
+		for (int id = 0; id < n; id++) {
+			if (left[id] != -1) {
+				parents[left[id]][parentCount[left[id]]++] = id;
+			}//end if
+			if (right[id] != -1) {
+				parents[right[id]][parentCount[right[id]]++] = id;
+			}//end if
+			if (kind[id] == SCALAR) {
+				scalarReaders[slot[id]][scalarCount[slot[id]]++] = id;
+			}//end if
+			else if (kind[id] == ELEMENT) {
+				arrayReaders[slot[id]][arrayCount[slot[id]]++] = id;
+			}//end else if
+		}//end for
+
+		//nothing computed yet
+		for (int id = 0; id < n; id++) {
+			if (kind[id] != CONSTANT) {
+				dirty[id] = true;
+				pending[pendingCount++] = id;
+			}//end if
+		}//end for
+	}
+
+	/**
+	 * Numbers a node and its descendants, children first, and returns its number. A temporary
+	 * stands for the node it was hoisted from.
+	 */
+	private static int number(ExprNode node, ArrayList<ExprNode> nodes, IdentityHashMap<ExprNode,Integer> ids, int[] temps) {
+		if (node instanceof ExprNode.Temp) {
+			return temps[((ExprNode.Temp) node).slot];
+		}//end if
+		Integer id = ids.get(node);
+		if (id != null) {
+			return id;
+		}//end if
+		if (node instanceof ExprNode.ArrayElement) {
+			number(((ExprNode.ArrayElement) node).index, nodes, ids, temps);
+		}//end if
+		else if (node instanceof ExprNode.Negate) {
+			number(((ExprNode.Negate) node).operand, nodes, ids, temps);
+		}//end else if
+		else if (node instanceof ExprNode.Binary) {
+			number(((ExprNode.Binary) node).left, nodes, ids, temps);
+			number(((ExprNode.Binary) node).right, nodes, ids, temps);
+		}//end else if
+		ids.put(node, nodes.size());
+		nodes.add(node);
+		return nodes.size() - 1;
+	}
+
+	private static int child(ExprNode node, IdentityHashMap<ExprNode,Integer> ids, int[] temps) {
+		return node instanceof ExprNode.Temp ? temps[((ExprNode.Temp) node).slot] : ids.get(node);
+	}
+
+	/**
+	 * Sets the value of a scalar symbol. Nothing is marked dirty if the value is unchanged.
+	 *
+	 * @param slot Slot of the symbol, from CompiledExpression.scalarSlot
+	 * @param value Value
+	 */
+	public void setScalar(int slot, int value) {
+		if (bindings.scalars[slot] == value) {
+			return;
+		}//end if
+		bindings.scalars[slot] = value;
+		for (int id : scalarReaders[slot]) {
+			markDirty(id);
+		}//end for
+	}
+
+	/**
+	 * Sets the value of a scalar symbol by name.
+	 *
+	 * @param name Name of the symbol
+	 * @param value Value
+	 * @throws IllegalArgumentException If there is no such scalar symbol
+	 */
+	public void setScalar(String name, int value) {
+		int slot = bindings.symbols.scalarSlot(name);
+		if (slot == -1) {
+			throw new IllegalArgumentException("No symbol " + name);
+		}//end if
+		setScalar(slot, value);
+	}
+
+	/**
+	 * Sets all the values of an array symbol. Every element of the array is marked dirty, unless
+	 * the values are the ones already set.
+	 *
+	 * @param slot Slot of the symbol, from CompiledExpression.arraySlot
+	 * @param values Values
+	 */
+	public void setArray(int slot, ArrayValues values) {
+		if (bindings.arrays[slot] == values) {
+			return;
+		}//end if
+		bindings.arrays[slot] = values;
+		for (int id : arrayReaders[slot]) {
+			markDirty(id);
+		}//end for
+	}
+
+	/**
+	 * Sets all the values of an array symbol, by name.
+	 *
+	 * @param name Name of the symbol
+	 * @param values Values, not copied
+	 * @throws IllegalArgumentException If there is no such array symbol
+	 */
+	public void setArray(String name, int[] values) {
+		int slot = bindings.symbols.arraySlot(name);
+		if (slot == -1) {
+			throw new IllegalArgumentException("No symbol " + name);
+		}//end if
+		setArray(slot, ArrayValues.of(values));
+	}
+
+	/**
+	 * Sets the value at one index of an array symbol, writing it through to the array values. Only
+	 * the elements of the array whose subscript was that index when last evaluated are marked dirty.
+	 *
+	 * @param slot Slot of the symbol, from CompiledExpression.arraySlot
+	 * @param index Index
+	 * @param value Value
+	 * @throws ArrayIndexOutOfBoundsException If the index is out of bounds
+	 * @throws IllegalStateException If no values have been loaded or set for the array
+	 */
+	public void setArrayElement(int slot, int index, int value) {
+		ArrayValues values = bindings.arrays[slot];
+		if (values == null) {
+			throw new IllegalStateException("No values loaded for array " + bindings.symbols.arrayNames.get(slot));
+		}//end if
+		if (values.get(index) == value) {
+			return;
+		}//end if
+		values.set(index, value);
+		for (int id : arrayReaders[slot]) {
+			if (subscript[id] == index) {
+				markDirty(id);
+			}//end if
+		}//end for
+	}
+
+	/**
+	 * Marks a node and all its ancestors dirty, stopping at ones that already are, since their
+	 * ancestors are too.
+	 */
+	private void markDirty(int id) {
+		if (dirty[id]) {
+			return;
+		}//end if
+		int top = 0;
+		dirty[id] = true;
+		stack[top++] = id;
+		while (top > 0) {
+			int node = stack[--top];
+			pending[pendingCount++] = node;
+			for (int parent : parents[node]) {
+				if (!dirty[parent]) {
+					dirty[parent] = true;
+					stack[top++] = parent;
+				}//end if
+			}//end for
+		}//end while
+	}
+
+	/**
+	 * Evaluates the expression, recomputing only the nodes made dirty since the last evaluation.
+	 * Allocates nothing.
+	 *
+	 * @return Result of evaluation
+	 */
+	public float evaluate() {
+		Arrays.sort(pending, 0, pendingCount);
+		int i = 0;
+		try {
+			for (; i < pendingCount; i++) {
+				compute(pending[i]);
+				dirty[pending[i]] = false;
+			}//end for
+		}//end try
+		finally {
+			//if a node threw, it and the nodes after it stay dirty
+			System.arraycopy(pending, i, pending, 0, pendingCount - i);
+			pendingCount -= i;
+			recomputed = i;
+		}//end finally
+		return value[root];
+	}
+
+	private void compute(int id) {
+		switch (kind[id]) {
+		case SCALAR:
+			value[id] = bindings.scalars[slot[id]];
+			break;
+		case ELEMENT:
+			subscript[id] = (int) value[left[id]];
+			value[id] = bindings.arrays[slot[id]].get(subscript[id]);
+			break;
+		case NEGATE:
+			value[id] = -value[left[id]];
+			break;
+		case BINARY:
+			float l = value[left[id]];
+			float r = value[right[id]];
+			switch (op[id]) {
+			case '+': value[id] = l + r; break;
+			case '-': value[id] = l - r; break;
+			case '*': value[id] = l * r; break;
+			default: value[id] = l / r;
+			}
+			break;
+		default:
+			//constants never change
+		}
+	}
+
+	/**
+	 * Returns the number of nodes the last evaluate recomputed, to see how much an update cost.
+	 *
+	 * @return Number of nodes
+	 */
+	public int getRecomputed() {
+		return recomputed;
+	}
+
+	/**
+	 * Returns the number of nodes of the expression, constants included.
+	 *
+	 * @return Number of nodes
+	 */
+	public int size() {
+		return value.length;
+	}
+}
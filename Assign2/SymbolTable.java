@@ -0,0 +1,89 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class maps the names of the scalar and array symbols of an expression to dense slots,
+ * 0, 1, 2, ... in the order the symbols were added. The slot of a symbol is its index in the
+ * scalars or arrays list of the Expression, and in a Bindings.
+ * 
+ * @author runb-cs112
+ *
+ */
+class SymbolTable {
+	
+	private final HashMap<String,Integer> scalarSlots = new HashMap<String,Integer>();
+	
+	private final HashMap<String,Integer> arraySlots = new HashMap<String,Integer>();
+	
+	/**
+	 * Names of the scalar symbols, by slot.
+	 */
+	final ArrayList<String> scalarNames = new ArrayList<String>();
+	
+	/**
+	 * Names of the array symbols, by slot.
+	 */
+	final ArrayList<String> arrayNames = new ArrayList<String>();
+	
+	/**
+	 * Adds a scalar symbol if it is not already in the table.
+	 * 
+	 * @param name Name of the symbol
+	 * @return True if the symbol was added, false if it was already there
+	 */
+	boolean addScalar(String name) {
+		if (scalarSlots.containsKey(name)) {
+			return false;
+		}//end if
+		scalarSlots.put(name, scalarNames.size());
+		scalarNames.add(name);
+		return true;
+	}
+	
+	/**
+	 * Adds an array symbol if it is not already in the table.
+	 * 
+	 * @param name Name of the symbol
+	 * @return True if the symbol was added, false if it was already there
+	 */
+	boolean addArray(String name) {
+		if (arraySlots.containsKey(name)) {
+			return false;
+		}//end if
+		arraySlots.put(name, arrayNames.size());
+		arrayNames.add(name);
+		return true;
+	}
+	
+	/**
+	 * Returns the slot of a scalar symbol.
+	 * 
+	 * @param name Name of the symbol
+	 * @return Slot, or -1 if there is no such scalar symbol
+	 */
+	int scalarSlot(String name) {
+		Integer slot = scalarSlots.get(name);
+		return slot == null ? -1 : slot;
+	}
+	
+	/**
+	 * Returns the slot of an array symbol.
+	 * 
+	 * @param name Name of the symbol
+	 * @return Slot, or -1 if there is no such array symbol
+	 */
+	int arraySlot(String name) {
+		Integer slot = arraySlots.get(name);
+		return slot == null ? -1 : slot;
+	}
+	
+	int scalarCount() {
+		return scalarNames.size();
+	}
+	
+	int arrayCount() {
+		return arrayNames.size();
+	}
+}
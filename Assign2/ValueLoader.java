@@ -0,0 +1,498 @@
+package apps;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * This class loads values for the symbols of an expression straight from a channel, a buffer at a
+ * time, without going through Scanner and StringTokenizer. Names are matched and numbers are parsed
+ * byte by byte, so nothing is allocated per line or per (index,val) pair, only the arrays that hold
+ * the values. It reads two formats, told apart by the first bytes:
+ * <ul>
+ * <li>The text format read by Expression.loadSymbolValues(Scanner), one symbol per line:
+ *     "name value" for a scalar, "name length (index,val) (index,val) ..." for an array.</li>
+ * <li>A binary format, as written by write: the bytes MAGIC, then one record per symbol, each a
+ *     kind byte, the name as an unsigned short length and ASCII bytes, then big-endian ints:
+ *     <ul>
+ *     <li>SCALAR: value</li>
+ *     <li>SPARSE: length, count, then count (index, value) pairs</li>
+ *     <li>DENSE: length, then length values</li>
+ *     </ul></li>
+ * </ul>
+ * Lines and records for names that are not symbols of the expression are skipped.
+ *
+ * @author runb-cs112
+ *
+ */
+class ValueLoader {
+
+	/**
+	 * First bytes of the binary format. A text file starts with a letter, so it can not start with these.
+	 */
+	static final byte[] MAGIC = { (byte)0xE7, 'X', 'P', 'V' };
+
+	static final byte SCALAR = 'S';
+
+	static final byte SPARSE = 'A';
+
+	static final byte DENSE = 'D';
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Expression expression;
+
+	private final ArrayList<ScalarSymbol> scalars;
+
+	private final ArrayList<ArraySymbol> arrays;
+
+	/**
+	 * Names of the symbols as ASCII bytes, hashed by open addressing, with the scalar and array
+	 * slot of each, -1 if the name is not that kind of symbol.
+	 */
+	private final byte[][] names;
+
+	private final int[] scalarSlots;
+
+	private final int[] arraySlots;
+
+	/**
+	 * Buffer of this load. A heap buffer, so that it is freed with the loader: a direct one would
+	 * be slow to allocate per load, and kept per thread it would pin native memory for every
+	 * thread, virtual ones included, that ever loaded values.
+	 */
+	private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private ReadableByteChannel in;
+
+	/**
+	 * Current byte of the text being read, -1 at the end.
+	 */
+	private int ch;
+
+	/**
+	 * Name being read, reused from line to line.
+	 */
+	private byte[] name = new byte[32];
+
+	/**
+	 * Initializes a loader for the symbols of an expression.
+	 *
+	 * @param expression Expression whose symbols have been built, and whose symbol values are set
+	 */
+	ValueLoader(Expression expression) {
+		this.expression = expression;
+		scalars = expression.scalars;
+		arrays = expression.arrays;
+		SymbolTable symbols = expression.symbols;
+		int size = Integer.highestOneBit(Math.max(symbols.scalarCount() + symbols.arrayCount(), 1)) * 4;
+		names = new byte[size][];
+		scalarSlots = new int[size];
+		arraySlots = new int[size];
+		for (int n = 0; n < symbols.scalarCount(); n++) {
+			scalarSlots[add(symbols.scalarNames.get(n))] = n;
+		}//end for
+		for (int n = 0; n < symbols.arrayCount(); n++) {
+			arraySlots[add(symbols.arrayNames.get(n))] = n;
+		}//end for
+	}
+
+	/**
+	 * Adds a name to the hash table if it is not there yet.
+	 *
+	 * @param s Name
+	 * @return Entry of the name
+	 */
+	private int add(String s) {
+		byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+		int e = find(b, b.length);
+		if (e == -1) {
+			e = hash(b, b.length) & (names.length - 1);
+			while (names[e] != null) {
+				e = (e + 1) & (names.length - 1);
+			}//end while
+			names[e] = b;
+			scalarSlots[e] = -1;
+			arraySlots[e] = -1;
+		}//end if
+		return e;
+	}
+
+	/**
+	 * Looks up a name in the hash table.
+	 *
+	 * @param b Bytes of the name
+	 * @param len Number of bytes
+	 * @return Entry of the name, or -1 if it is not a symbol
+	 */
+	private int find(byte[] b, int len) {
+		int e = hash(b, len) & (names.length - 1);
+		while (names[e] != null) {
+			if (same(names[e], b, len)) {
+				return e;
+			}//end if
+			e = (e + 1) & (names.length - 1);
+		}//end while
+		return -1;
+	}
+
+	private static int hash(byte[] b, int len) {
+		int h = 0;
+		for (int i = 0; i < len; i++) {
+			h = 31 * h + b[i];
+		}//end for
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean same(byte[] a, byte[] b, int len) {
+		if (a.length != len) {
+			return false;
+		}//end if
+		for (int i = 0; i < len; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}//end if
+		}//end for
+		return true;
+	}
+
+	/**
+	 * Loads symbol values from a channel, in either format, until the end of the channel.
+	 * The channel is not closed.
+	 *
+	 * @param in Channel to read
+	 * @throws IOException If there is a problem reading, or the input is malformed
+	 */
+	void load(ReadableByteChannel in) throws IOException {
+		this.in = in;
+		buf.clear().flip();
+		fill(MAGIC.length);
+		boolean binary = buf.remaining() >= MAGIC.length;
+		for (int i = 0; binary && i < MAGIC.length; i++) {
+			binary = buf.get(buf.position() + i) == MAGIC[i];
+		}//end for
+		if (binary) {
+			buf.position(buf.position() + MAGIC.length);
+			loadBinary();
+		}//end if
+		else {
+			loadText();
+		}//end else
+		this.in = null;
+	}
+
+	/**
+	 * Reads from the channel until at least the given number of bytes are in the buffer, or the
+	 * channel ends.
+	 *
+	 * @param n Number of bytes
+	 * @return True if there are n bytes, false if the channel ended first
+	 * @throws IOException If there is a problem reading
+	 */
+	private boolean fill(int n) throws IOException {
+		if (buf.remaining() >= n) {
+			return true;
+		}//end if
+		buf.compact();
+		try {
+			while (buf.position() < n) {
+				if (in.read(buf) == -1) {
+					return false;
+				}//end if
+			}//end while
+			return true;
+		}//end try
+		finally {
+			buf.flip();
+		}//end finally
+	}
+
+	/**
+	 * Moves to the next byte of text.
+	 */
+	private void next() throws IOException {
+		if (buf.hasRemaining() || fill(1)) {
+			ch = buf.get() & 0xff;
+		}//end if
+		else {
+			ch = -1;
+		}//end else
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+	/**
+	 * Tells whether a byte separates numbers on a line, i.e. is a space or part of an (index,val) pair.
+	 */
+	private static boolean isSeparator(int c) {
+		return isSpace(c) || c == '(' || c == ',' || c == ')';
+	}
+
+	private boolean atEndOfLine() {
+		return ch == '\n' || ch == -1;
+	}
+
+	private void loadText() throws IOException {
+		next();
+		while (ch != -1) {
+			if (isSpace(ch) || ch == '\n') {
+				next();
+				continue;
+			}//end if
+			int len = 0;
+			while (!isSpace(ch) && !atEndOfLine()) {
+				if (len == name.length) {
+					byte[] grown = new byte[len * 2];
+					System.arraycopy(name, 0, grown, 0, len);
+					name = grown;
+				}//end if
+				name[len++] = (byte)ch;
+				next();
+			}//end while
+			int e = find(name, len);
+			if (e == -1) {
+				//not a symbol of this expression
+				while (!atEndOfLine()) {
+					next();
+				}//end while
+				continue;
+			}//end if
+			while (isSpace(ch)) {
+				next();
+			}//end while
+			int num = number(e);
+			while (isSeparator(ch)) {
+				next();
+			}//end while
+			if (atEndOfLine() && scalarSlots[e] != -1) {
+				scalars.get(scalarSlots[e]).value = num;
+				continue;
+			}//end if
+			if (arraySlots[e] == -1 || num < 0) {
+				throw malformed(e);
+			}//end if
+			ArrayValues values = ArrayValues.allocate(num, -1);
+			// following are (index,val) pairs
+			while (!atEndOfLine()) {
+				int index = number(e);
+				while (isSeparator(ch)) {
+					next();
+				}//end while
+				int val = number(e);
+				while (isSeparator(ch)) {
+					next();
+				}//end while
+				if (index < 0 || index >= num) {
+					throw new IOException("Index " + index + " out of bounds for " + arrays.get(arraySlots[e]).name + "[" + num + "]");
+				}//end if
+				values.set(index, val);
+			}//end while
+			expression.setBacking(arraySlots[e], values.settle());
+		}//end while
+	}
+
+	/**
+	 * Parses a decimal int at the current byte, leaving the current byte just after it.
+	 *
+	 * @param e Entry of the symbol whose line is being read, for the error message
+	 * @return Value
+	 * @throws IOException If there is no int at the current byte
+	 */
+	private int number(int e) throws IOException {
+		boolean negative = ch == '-';
+		if (negative || ch == '+') {
+			next();
+		}//end if
+		if (ch < '0' || ch > '9') {
+			throw malformed(e);
+		}//end if
+		long value = 0;
+		while (ch >= '0' && ch <= '9') {
+			value = value * 10 + (ch - '0');
+			if (value > 1L + Integer.MAX_VALUE) {
+				throw malformed(e);
+			}//end if
+			next();
+		}//end while
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			throw malformed(e);
+		}//end if
+		return (int)value;
+	}
+
+	private IOException malformed(int e) {
+		return new IOException("Malformed values for " + new String(names[e], StandardCharsets.US_ASCII));
+	}
+
+	private int readInt() throws IOException {
+		if (!fill(4)) {
+			throw new EOFException("Truncated symbol values");
+		}//end if
+		return buf.getInt();
+	}
+
+	private void loadBinary() throws IOException {
+		while (fill(1)) {
+			byte kind = buf.get();
+			if (!fill(2)) {
+				throw new EOFException("Truncated symbol values");
+			}//end if
+			int len = buf.getShort() & 0xffff;
+			if (len > name.length) {
+				name = new byte[Integer.highestOneBit(len) * 2];
+			}//end if
+			if (!fill(len)) {
+				throw new EOFException("Truncated symbol values");
+			}//end if
+			buf.get(name, 0, len);
+			int e = find(name, len);
+			if (kind == SCALAR) {
+				int value = readInt();
+				if (e != -1 && scalarSlots[e] != -1) {
+					scalars.get(scalarSlots[e]).value = value;
+				}//end if
+				continue;
+			}//end if
+			if (kind != SPARSE && kind != DENSE) {
+				throw new IOException("Unknown record kind " + kind);
+			}//end if
+			int length = readInt();
+			int count = kind == SPARSE ? readInt() : length;
+			if (length < 0 || count < 0) {
+				throw new IOException("Malformed values for " + new String(name, 0, len, StandardCharsets.US_ASCII));
+			}//end if
+			ArrayValues values = null;
+			if (e != -1 && arraySlots[e] != -1) {
+				values = ArrayValues.allocate(length, count);
+			}//end if
+			if (kind == DENSE) {
+				int[] dense = values == null ? null : values.dense();
+				for (int i = 0; i < length; i++) {
+					int value = readInt();
+					if (dense != null) {
+						dense[i] = value;
+					}//end if
+					else if (values != null) {
+						values.set(i, value);
+					}//end else if
+				}//end for
+				if (values != null) {
+					expression.setBacking(arraySlots[e], values);
+				}//end if
+				continue;
+			}//end if
+			for (int i = 0; i < count; i++) {
+				int index = readInt();
+				int value = readInt();
+				if (values != null) {
+					if (index < 0 || index >= length) {
+						throw new IOException("Index " + index + " out of bounds for " + arrays.get(arraySlots[e]).name + "[" + length + "]");
+					}//end if
+					values.set(index, value);
+				}//end if
+			}//end for
+			if (values != null) {
+				expression.setBacking(arraySlots[e], values.settle());
+			}//end if
+		}//end while
+	}
+
+	/**
+	 * Writes the values of symbols to a channel in the binary format. Arrays with values at fewer
+	 * than half their indexes are written as (index, value) pairs, others value by value. Arrays
+	 * with no values loaded are left out. The channel is not closed.
+	 *
+	 * @param out Channel to write
+	 * @param expression Expression whose symbol values are written, with its backings up to date
+	 * @throws IOException If there is a problem writing
+	 */
+	static void write(WritableByteChannel out, Expression expression)
+	throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+		buf.put(MAGIC);
+		for (ScalarSymbol s : expression.scalars) {
+			byte[] name = header(out, buf, s.name);
+			buf.put(SCALAR).putShort((short)name.length).put(name).putInt(s.value);
+		}//end for
+		for (int n = 0; n < expression.arrays.size(); n++) {
+			ArrayValues values = expression.backings[n];
+			if (values == null) {
+				continue;
+			}//end if
+			byte[] name = header(out, buf, expression.arrays.get(n).name);
+			if (values instanceof ArrayValues.Sparse) {
+				//only the entries of the map, not every index
+				ArrayValues.Sparse map = (ArrayValues.Sparse) values;
+				int count = 0;
+				for (int i = 0; i < map.keys.length; i++) {
+					if (map.keys[i] != 0 && map.values[i] != 0) {
+						count++;
+					}//end if
+				}//end for
+				buf.put(SPARSE).putShort((short)name.length).put(name).putInt(values.length).putInt(count);
+				for (int i = 0; i < map.keys.length; i++) {
+					if (map.keys[i] != 0 && map.values[i] != 0) {
+						if (buf.remaining() < 8) {
+							flush(out, buf);
+						}//end if
+						buf.putInt(map.keys[i] - 1).putInt(map.values[i]);
+					}//end if
+				}//end for
+				continue;
+			}//end if
+			int count = 0;
+			for (int i = 0; i < values.length; i++) {
+				if (values.get(i) != 0) {
+					count++;
+				}//end if
+			}//end for
+			boolean sparse = count < values.length / 2;
+			buf.put(sparse ? SPARSE : DENSE).putShort((short)name.length).put(name).putInt(values.length);
+			if (sparse) {
+				buf.putInt(count);
+			}//end if
+			for (int i = 0; i < values.length; i++) {
+				int value = values.get(i);
+				if (sparse && value == 0) {
+					continue;
+				}//end if
+				if (buf.remaining() < 8) {
+					flush(out, buf);
+				}//end if
+				if (sparse) {
+					buf.putInt(i);
+				}//end if
+				buf.putInt(value);
+			}//end for
+		}//end for
+		flush(out, buf);
+	}
+
+	/**
+	 * Makes room in the buffer for the head of a record, up to and including its first count.
+	 *
+	 * @return ASCII bytes of the name
+	 */
+	private static byte[] header(WritableByteChannel out, ByteBuffer buf, String name) throws IOException {
+		byte[] b = name.getBytes(StandardCharsets.US_ASCII);
+		if (buf.remaining() < b.length + 16) {
+			flush(out, buf);
+		}//end if
+		return b;
+	}
+
+	private static void flush(WritableByteChannel out, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			out.write(buf);
+		}//end while
+		buf.clear();
+	}
+}
@@ -1,7 +1,17 @@
 
 package structures;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class implements a compressed trie. Each node of the tree is a CompressedTrieNode, with fields for
@@ -22,6 +32,16 @@ public class Trie {
 	 */
 	TrieNode root;
 	
+	/**
+	 * Number of completion queries run, exact and fuzzy.
+	 */
+	long completionQueries;
+	
+	/**
+	 * Number of nodes visited by all completion queries.
+	 */
+	long completionNodesVisited;
+	
 	/**
 	 * Initializes a compressed trie with words to be indexed, and root node set to
 	 * null fields.
@@ -37,14 +57,25 @@ public class Trie {
 	/**
 	 * Inserts a word into this trie. Converts to lower case before adding.
 	 * The word is first added to the words array list, then inserted into the trie.
+	 * A word that is already in the trie is left alone, so words holds each word once.
 	 * 
 	 * @param word Word to be inserted.
+	 * @throws IllegalArgumentException If the word is longer than Short.MAX_VALUE characters, which
+	 *         node indexes cannot address. Use Utf8Trie for such words.
 	 */
 	public void insertWord(String word) {
+		if (word.length() > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Word of length " + word.length() + " is too long for Trie, use Utf8Trie");
+		}//end if
+		String found = longestPrefixOf(word);
+		if (found != null && found.length() == word.length()) {
+			//already a word, another entry in words would have no node pointing to it
+			return;
+		}//end if
 		words.add(word);
 		//adds word 
 		
-		int wordIndex = 0;
+		int wordIndex = words.size()-1;
 		//check if tree is null
 		if (root.firstChild == null) {
 			// No trie 
@@ -53,65 +84,88 @@ public class Trie {
 			root.firstChild = n;
 		}//end if
 		else {
+			TrieNode parent = root;
+			TrieNode prev = null;
 			TrieNode ptr = root.firstChild;
 			int startDex = 0;
 			while (ptr != null) {
-				String prefix = "";
 				String currNode = words.get(ptr.substr.wordIndex);
+				int endDex = ptr.substr.endIndex;
+				
+				//only the characters on this node's own edge may be compared
+				int i = startDex;
+				while (i <= endDex && i < word.length() && word.charAt(i) == currNode.charAt(i)) {
+					i++;
+				}//end while
 				
-				for(int i = startDex; i <word.length(); i++) {
-					if (i != currNode.length()-1)
-						if(word.charAt(i) == currNode.charAt(i)) {
-							prefix+=word.charAt(i);
+				if (i == startDex) {
+					// sibling, kept in order of first edge character
+					if (i == word.length() && i > endDex) {
+						//word is already in the trie, as a prefix of other words
+						break;
+					}//end if
+					else if (edgeChar(word, i, word.length()-1) < edgeChar(currNode, i, endDex)) {
+						Indexes in = new Indexes(wordIndex, (short) startDex, (short) (word.length()-1));
+						TrieNode n = new TrieNode(in,null,ptr);
+						if (prev == null) {
+							parent.firstChild = n;
 						}//end if
 						else {
-							break;
+							prev.sibling = n;
 						}//end else
-					else {
-						break;
-					}//end else
-				}//end for
-				
-				if (prefix.length() >= 1) {
-					//child
-					if (ptr.firstChild == null) {
-						//fix ptr index
-						ptr.substr.startIndex = (short) (startDex);
-						ptr.substr.endIndex = (short) (startDex + prefix.length()-1);
-						
-						//add two children for trailing substring
-						Indexes i1 = new Indexes(words.indexOf(currNode), (short) (startDex + prefix.length()), (short) (currNode.length()-1));
-						TrieNode n1 = new TrieNode(i1,null,null);
-						ptr.firstChild = n1;
-						
-						Indexes i2 = new Indexes(words.indexOf(word), (short) (startDex + prefix.length()), (short) (word.length()-1));
-						TrieNode n2 = new TrieNode(i2,null,null);
-						ptr.firstChild.sibling = n2;
 						break;
 					}//end if
+					else if (ptr.sibling == null) {
+						Indexes in = new Indexes(wordIndex, (short) startDex, (short) (word.length()-1));
+						ptr.sibling = new TrieNode(in,null,null);
+						break;
+					}//end else if
 					else {
-						startDex  = startDex + prefix.length();
-						ptr = ptr.firstChild;
-						continue;
-						//continues through loop
+						prev = ptr;
+						ptr = ptr.sibling;
 					}//end else
 				}//end if
+				else if (i > endDex && ptr.firstChild != null) {
+					//whole edge matched, continue with the children
+					startDex = i;
+					parent = ptr;
+					prev = null;
+					ptr = ptr.firstChild;
+				}//end else if
 				else {
-					// sibling
-					if (ptr.sibling == null) {
-						Indexes i = new Indexes(words.indexOf(word), (short) (0), (short) (word.length()-1));
-						TrieNode n = new TrieNode(i,null,null);
-						ptr.sibling = n;
+					if (i == word.length() && i > endDex) {
+						//word is already in the trie
 						break;
-					}
+					}//end if
+					//split the edge, the old tail keeps the old children
+					Indexes i1 = new Indexes(ptr.substr.wordIndex, (short) i, ptr.substr.endIndex);
+					TrieNode n1 = new TrieNode(i1,ptr.firstChild,null);
+					ptr.substr.endIndex = (short) (i-1);
+					
+					Indexes i2 = new Indexes(wordIndex, (short) i, (short) (word.length()-1));
+					TrieNode n2 = new TrieNode(i2,null,null);
+					if (edgeChar(word, i, word.length()-1) < edgeChar(currNode, i, i1.endIndex)) {
+						n2.sibling = n1;
+						ptr.firstChild = n2;
+					}//end if
 					else {
-						ptr = ptr.sibling;
+						n1.sibling = n2;
+						ptr.firstChild = n1;
 					}//end else
+					break;
 				}//end else
 			}//end while
 		}//end else			
 	}//end insertWords
 	
+	/**
+	 * Returns the first character of the edge word[start..end], or -1 if the edge is empty
+	 * so that empty edges sort before all others.
+	 */
+	private static int edgeChar(String word, int start, int end) {
+		return start > end ? -1 : word.charAt(start);
+	}
+	
 	/**
 	 * Given a string prefix, returns its "completion list", i.e. all the words in the trie
 	 * that start with this prefix. For instance, if the tree had the words bear, bull, stock, and bell,
@@ -122,44 +176,565 @@ public class Trie {
 	 * 
 	 * @param prefix Prefix to be completed with words in trie
 	 * @return List of all words in tree that start with the prefix, order of words in list does not matter.
-	 *         If there is no word in the tree that has this prefix, null is returned.
+	 *         If there is no word in the tree that has this prefix, the list is empty.
 	 */	
 	
 
 	public ArrayList<String> completionList(String prefix) {
 		ArrayList<String> set = new ArrayList<String>();
-		return completionList(root, set, prefix);
+		Iterator<String> it = completions(prefix);
+		while (it.hasNext()) {
+			set.add(it.next());
+		}//end while
+		return set;
+	}//end completionList
+	
+	/**
+	 * Returns one page of the completion list for a prefix, in lexicographic order. To get the next
+	 * page, call again with the last word of this page as the resume token.
+	 * 
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param after Resume token, only words after it are returned. Null to start from the first word.
+	 * @param limit Maximum number of words in the page
+	 * @return Up to limit words that start with the prefix and come after the resume token
+	 */
+	public ArrayList<String> completionList(String prefix, String after, int limit) {
+		ArrayList<String> page = new ArrayList<String>();
+		Iterator<String> it = completions(prefix, after);
+		while (page.size() < limit && it.hasNext()) {
+			page.add(it.next());
+		}//end while
+		return page;
+	}//end completionList
+	
+	/**
+	 * Returns an iterator over the completion list for a prefix. Words come out in lexicographic order
+	 * as the matching subtree is walked, so the first words are available without building the whole list.
+	 * 
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return Iterator over all words in tree that start with the prefix
+	 */
+	public Iterator<String> completions(String prefix) {
+		return completions(prefix, null);
 	}
 	
-	private ArrayList<String> completionList(TrieNode root, ArrayList<String> set, String prefix) {
-		if (root == null) {
-			return null;
+	/**
+	 * Returns an iterator over the words of the completion list for a prefix that come after the
+	 * given resume token, in lexicographic order. The iterator seeks straight to the token,
+	 * it does not walk the words before it.
+	 * 
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param after Resume token, usually the last word seen. Null to start from the first word.
+	 * @return Iterator over the words in tree that start with the prefix and come after the token
+	 */
+	public Iterator<String> completions(String prefix, String after) {
+		return new CompletionIterator(prefix, after);
+	}
+	
+	/**
+	 * Returns the completion list for a prefix as a lazy, ordered stream.
+	 * 
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return Stream of all words in tree that start with the prefix, in lexicographic order
+	 */
+	public Stream<String> completionStream(String prefix) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(completions(prefix), 
+				Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+	}
+	
+	/**
+	 * Returns the longest word in the trie that is a prefix of the given key. For instance, if the
+	 * tree had the words /api, /api/users and /app, the longest prefix of /api/users/12 would be
+	 * /api/users, and /apple would have none. Walks the compressed edges once and allocates nothing.
+	 * 
+	 * @param key Key to be matched, e.g. a URL path
+	 * @return Longest word in tree that the key starts with, or null if there is none
+	 */
+	public String longestPrefixOf(String key) {
+		return prefixesOf(key, null);
+	}
+	
+	/**
+	 * Returns all the words in the trie that are prefixes of the given key, shortest first.
+	 * 
+	 * @param key Key to be matched, e.g. a URL path
+	 * @return List of the words in tree that the key starts with, empty if there are none
+	 */
+	public ArrayList<String> prefixesOf(String key) {
+		ArrayList<String> list = new ArrayList<String>();
+		prefixesOf(key, list);
+		return list;
+	}
+	
+	/**
+	 * Walks down the path of key, adding every word that ends on the way to list if it is not null.
+	 * A word ends at a leaf, or at an inner node whose first child has an empty edge.
+	 * Returns the last word found.
+	 */
+	private String prefixesOf(String key, ArrayList<String> list) {
+		String longest = null;
+		TrieNode ptr = root.firstChild;
+		int depth = 0;
+		while (ptr != null) {
+			String word = words.get(ptr.substr.wordIndex);
+			int endDex = ptr.substr.endIndex;
+			if (ptr.substr.startIndex > endDex) {
+				//empty edge, a word ends right here
+				longest = word;
+				if (list != null) {
+					list.add(word);
+				}//end if
+				ptr = ptr.sibling;
+				continue;
+			}//end if
+			if (depth == key.length() || word.charAt(depth) > key.charAt(depth)) {
+				//siblings are in order, none of the rest can match
+				break;
+			}//end if
+			if (word.charAt(depth) < key.charAt(depth)) {
+				ptr = ptr.sibling;
+				continue;
+			}//end if
+			if (endDex >= key.length() || !key.regionMatches(depth+1, word, depth+1, endDex-depth)) {
+				break;
+			}//end if
+			depth = endDex+1;
+			if (ptr.firstChild == null) {
+				longest = word;
+				if (list != null) {
+					list.add(word);
+				}//end if
+				break;
+			}//end if
+			ptr = ptr.firstChild;
+		}//end while
+		return longest;
+	}//end prefixesOf
+	
+	/**
+	 * Returns the node whose path covers the prefix, i.e. the root of the subtree holding
+	 * all the words that start with it. Returns the root for an empty prefix, and null if
+	 * no word starts with the prefix, which for an empty trie is every prefix.
+	 */
+	private TrieNode locus(String prefix) {
+		if (prefix.length() == 0) {
+			//the root of an empty trie has no subtree to walk
+			return root.firstChild == null ? null : root;
 		}//end if
-		//checks for null 
-		if(root.substr != null) {
-			boolean x = false;
-			if(words.get(root.substr.wordIndex).startsWith(prefix)){
-				x = true;
-			}//end if
-			if(x && !set.contains(words.get(root.substr.wordIndex))) {
-				set.add(words.get(root.substr.wordIndex));
-			}
+		TrieNode ptr = root.firstChild;
+		int depth = 0;
+		while (ptr != null) {
+			completionNodesVisited++;
+			String word = words.get(ptr.substr.wordIndex);
+			int endDex = ptr.substr.endIndex;
+			if (ptr.substr.startIndex > endDex || word.charAt(depth) != prefix.charAt(depth)) {
+				ptr = ptr.sibling;
+				continue;
+			}//end if
+			int len = Math.min(endDex+1, prefix.length()) - depth;
+			if (!prefix.regionMatches(depth, word, depth, len)) {
+				return null;
+			}//end if
+			if (depth+len == prefix.length()) {
+				return ptr;
+			}//end if
+			depth += len;
+			ptr = ptr.firstChild;
+		}//end while
+		return null;
+	}//end locus
+	
+	/**
+	 * Iterates over the leaves of a subtree in order. The stack holds the nodes still to be visited,
+	 * each standing for itself and the siblings that follow it.
+	 */
+	private class CompletionIterator implements Iterator<String> {
+		
+		ArrayDeque<TrieNode> stack = new ArrayDeque<TrieNode>();
+		
+		String next;
+		
+		CompletionIterator(String prefix, String after) {
+			completionQueries++;
+			TrieNode start = locus(prefix);
+			if (start == null) {
+				return;
+			}//end if
+			if (start.firstChild == null) {
+				//prefix is on the edge to a single word
+				if (after == null || words.get(start.substr.wordIndex).compareTo(after) > 0) {
+					next = words.get(start.substr.wordIndex);
+				}//end if
+				return;
+			}//end if
+			if (after == null) {
+				stack.push(start.firstChild);
+			}//end if
+			else {
+				seek(start.firstChild, after);
+			}//end else
+			advance();
+		}
+		
+		/**
+		 * Fills the stack so that the walk continues with the first word after the given one.
+		 */
+		private void seek(TrieNode ptr, String after) {
+			while (ptr != null) {
+				completionNodesVisited++;
+				String word = words.get(ptr.substr.wordIndex);
+				int pathLen = ptr.substr.endIndex+1;
+				if (pathLen <= after.length() && after.regionMatches(0, word, 0, pathLen)) {
+					//path is a prefix of the token
+					if (ptr.firstChild == null) {
+						if (pathLen == after.length()) {
+							//this is the token itself, resume with the next sibling
+							if (ptr.sibling != null) {
+								stack.push(ptr.sibling);
+							}//end if
+							return;
+						}//end if
+						ptr = ptr.sibling;
+					}//end if
+					else {
+						if (ptr.sibling != null) {
+							stack.push(ptr.sibling);
+						}//end if
+						ptr = ptr.firstChild;
+					}//end else
+				}//end if
+				else if (comparePath(word, pathLen, after) < 0) {
+					ptr = ptr.sibling;
+				}//end else if
+				else {
+					stack.push(ptr);
+					return;
+				}//end else
+			}//end while
+		}//end seek
+		
+		private void advance() {
+			next = null;
+			while (!stack.isEmpty()) {
+				TrieNode ptr = stack.pop();
+				completionNodesVisited++;
+				if (ptr.sibling != null) {
+					stack.push(ptr.sibling);
+				}//end if
+				if (ptr.firstChild == null) {
+					next = words.get(ptr.substr.wordIndex);
+					return;
+				}//end if
+				stack.push(ptr.firstChild);
+			}//end while
+		}//end advance
+		
+		public boolean hasNext() {
+			return next != null;
+		}
+		
+		public String next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}//end if
+			String word = next;
+			advance();
+			return word;
+		}
+	}//end CompletionIterator
+	
+	/**
+	 * Compares the first pathLen characters of word with key, like compareTo but without
+	 * taking the substring.
+	 */
+	private static int comparePath(String word, int pathLen, String key) {
+		int n = Math.min(pathLen, key.length());
+		for (int i = 0; i < n; i++) {
+			if (word.charAt(i) != key.charAt(i)) {
+				return word.charAt(i) - key.charAt(i);
+			}//end if
+		}//end for
+		return pathLen - key.length();
+	}
+	
+	/**
+	 * Given a possibly mistyped prefix, returns all the words in the trie that start with some string
+	 * within maxEdits edits (insertions, deletions or substitutions) of the prefix. For instance, if the
+	 * tree had the words bear, bull, stock, and bell, the fuzzy completion list for prefix "bwl" with one
+	 * edit would be bell and bull.
+	 * The prefix is run as a Levenshtein automaton in lockstep with the walk down the trie, one row of
+	 * states per character, so a branch is dropped as soon as every state is past maxEdits.
+	 * Words are ordered by edit distance, closest first, then alphabetically since the trie keeps no
+	 * weights for its words.
+	 * 
+	 * @param prefix Prefix to be completed, may contain typos
+	 * @param maxEdits Maximum edit distance, 1 or 2
+	 * @return List of matching words, closest first.
+	 *         If there is no word in the tree that matches, the list is empty.
+	 * @throws IllegalArgumentException If maxEdits is not 1 or 2
+	 */
+	public ArrayList<String> fuzzyCompletionList(String prefix, int maxEdits) {
+		if (maxEdits < 1 || maxEdits > 2) {
+			throw new IllegalArgumentException("maxEdits must be 1 or 2, was " + maxEdits);
 		}//end if
 		
+		ArrayList<ArrayList<String>> found = new ArrayList<ArrayList<String>>();
+		for (int d = 0; d <= maxEdits; d++) {
+			found.add(new ArrayList<String>());
+		}//end for
+		//one list of words per edit distance
 		
-		for (TrieNode ptr=root.firstChild; ptr != null; ptr=ptr.sibling) {
-			completionList(ptr, set, prefix);
-			//traversal
-			/* 
-			 * initially I used a basic arraylist to find the words that I would need to return
-			 * but sesh emailed us saying that we couldn't do that.
-			 * The best thing to do was to use the base traversal that is done in print and used it here
-			 * Then you have to keep it going.
-			 */
+		ArrayList<int[]> rows = new ArrayList<int[]>();
+		int[] row = new int[prefix.length()+1];
+		for (int j = 0; j < row.length; j++) {
+			row[j] = j;
 		}//end for
-		return set;
-	}//end completionList
+		rows.add(row);
+		//rows.get(d) is the automaton state after d characters of the current path
+		
+		completionQueries++;
+		fuzzyCompletionList(root.firstChild, prefix, maxEdits, rows, prefix.length(), found);
+		
+		ArrayList<String> result = new ArrayList<String>();
+		for (ArrayList<String> list : found) {
+			Collections.sort(list);
+			result.addAll(list);
+		}//end for
+		return result;
+	}//end fuzzyCompletionList
+	
+	private void fuzzyCompletionList(TrieNode ptr, String prefix, int maxEdits, ArrayList<int[]> rows, 
+			int best, ArrayList<ArrayList<String>> found) {
+		int n = prefix.length();
+		for (; ptr != null; ptr = ptr.sibling) {
+			completionNodesVisited++;
+			String word = words.get(ptr.substr.wordIndex);
+			int nodeBest = best;
+			boolean alive = true;
+			
+			for (int d = ptr.substr.startIndex; d <= ptr.substr.endIndex; d++) {
+				if (rows.size() == d+1) {
+					rows.add(new int[n+1]);
+				}//end if
+				int[] prev = rows.get(d);
+				int[] next = rows.get(d+1);
+				char c = word.charAt(d);
+				
+				next[0] = prev[0]+1;
+				int min = next[0];
+				for (int j = 1; j <= n; j++) {
+					int cost = prefix.charAt(j-1) == c ? 0 : 1;
+					next[j] = Math.min(Math.min(next[j-1]+1, prev[j]+1), prev[j-1]+cost);
+					if (next[j] < min) {
+						min = next[j];
+					}//end if
+				}//end for
+				
+				if (next[n] < nodeBest) {
+					nodeBest = next[n];
+				}//end if
+				if (min > maxEdits) {
+					//automaton is dead, no longer path can get any closer
+					alive = false;
+					break;
+				}//end if
+			}//end for
+			
+			if (!alive || ptr.firstChild == null) {
+				if (nodeBest <= maxEdits) {
+					completionNodesVisited += collectWords(ptr, found.get(nodeBest));
+				}//end if
+			}//end if
+			else {
+				fuzzyCompletionList(ptr.firstChild, prefix, maxEdits, rows, nodeBest, found);
+			}//end else
+		}//end for
+	}//end fuzzyCompletionList
+	
+	/**
+	 * Adds the words of all the leaves under the given node, including the node itself, to the list.
+	 * Returns the number of nodes visited. Walks with an explicit stack of sibling chains, so long
+	 * chains and deep subtrees take no call stack.
+	 */
+	private int collectWords(TrieNode node, ArrayList<String> list) {
+		if (node.firstChild == null) {
+			list.add(words.get(node.substr.wordIndex));
+			return 1;
+		}//end if
+		int visited = 1;
+		ArrayDeque<TrieNode> stack = new ArrayDeque<TrieNode>();
+		stack.push(node.firstChild);
+		while (!stack.isEmpty()) {
+			TrieNode ptr = stack.pop();
+			visited++;
+			if (ptr.sibling != null) {
+				stack.push(ptr.sibling);
+			}//end if
+			if (ptr.firstChild == null) {
+				list.add(words.get(ptr.substr.wordIndex));
+			}//end if
+			else {
+				//children before the siblings pushed above
+				stack.push(ptr.firstChild);
+			}//end else
+		}//end while
+		return visited;
+	}//end collectWords
+	
+	/**
+	 * Tells whether there are at least n words under the given node, counting no further than n.
+	 */
+	private static boolean hasWords(TrieNode node, int n) {
+		if (node.firstChild == null) {
+			return n <= 1;
+		}//end if
+		int count = 0;
+		ArrayDeque<TrieNode> stack = new ArrayDeque<TrieNode>();
+		stack.push(node.firstChild);
+		while (!stack.isEmpty() && count < n) {
+			TrieNode ptr = stack.pop();
+			if (ptr.sibling != null) {
+				stack.push(ptr.sibling);
+			}//end if
+			if (ptr.firstChild == null) {
+				count++;
+			}//end if
+			else {
+				stack.push(ptr.firstChild);
+			}//end else
+		}//end while
+		return count >= n;
+	}//end hasWords
+	
+	/**
+	 * Number of words in a subtree below which parallelCompletionList collects it on one thread
+	 * instead of splitting it into tasks.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 14;
+	
+	/**
+	 * Deepest level of the matching subtree at which parallelCompletionList still splits off tasks.
+	 */
+	static final int MAX_SPLIT_DEPTH = 8;
+	
+	/**
+	 * Returns the same list as completionList, in lexicographic order, but collects it with fork-join
+	 * tasks in the common pool. The children of the matching subtree are split into tasks, level by
+	 * level, for as long as the pool has idle workers to take them, and the lists of the tasks are
+	 * concatenated in sibling order. Meant for bulk exports and warm-up jobs that enumerate large parts
+	 * of the trie. A subtree with fewer than PARALLEL_THRESHOLD words is collected on one thread,
+	 * so a prefix with few completions is collected on the calling thread.
+	 * 
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return List of all words in tree that start with the prefix, in lexicographic order
+	 */
+	public ArrayList<String> parallelCompletionList(String prefix) {
+		TrieNode start = locus(prefix);
+		if (start == null || start.firstChild == null || !hasWords(start, PARALLEL_THRESHOLD)) {
+			return completionList(prefix);
+		}//end if
+		completionQueries++;
+		CompletionTask task = new CompletionTask(start, 0);
+		ArrayList<String> list = task.invoke();
+		completionNodesVisited += task.visited;
+		return list;
+	}//end parallelCompletionList
+	
+	/**
+	 * Collects the words under one node. Nodes visited are counted in the task and added up by
+	 * the caller, since the trie's counters are not safe to update from several threads.
+	 */
+	private class CompletionTask extends RecursiveTask<ArrayList<String>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		TrieNode node;
+		
+		int depth;
+		
+		long visited;
+		
+		CompletionTask(TrieNode node, int depth) {
+			this.node = node;
+			this.depth = depth;
+		}
+		
+		protected ArrayList<String> compute() {
+			ArrayList<String> list = new ArrayList<String>();
+			if (node.firstChild == null || depth >= MAX_SPLIT_DEPTH || getSurplusQueuedTaskCount() > 2
+					|| !hasWords(node, PARALLEL_THRESHOLD)) {
+				//small enough, or the pool already has work queued up
+				visited = collectWords(node, list);
+				return list;
+			}//end if
+			
+			ArrayList<CompletionTask> tasks = new ArrayList<CompletionTask>();
+			for (TrieNode ptr=node.firstChild; ptr != null; ptr=ptr.sibling) {
+				tasks.add(new CompletionTask(ptr, depth+1));
+			}//end for
+			invokeAll(tasks);
+			visited = 1;
+			for (CompletionTask task : tasks) {
+				list.addAll(task.join());
+				visited += task.visited;
+			}//end for
+			return list;
+		}
+	}//end CompletionTask
 
+	/**
+	 * Returns the current shape of this trie: node counts, leaf depths, sibling chain lengths,
+	 * estimated memory use, and completion query counters. Takes one walk over the whole trie.
+	 * 
+	 * @return Statistics for this trie
+	 */
+	public TrieStats stats() {
+		TrieStats stats = new TrieStats();
+		stats.words = words.size();
+		stats.chainLengths = new int[1];
+		if (root.firstChild != null) {
+			stats(root.firstChild, 1, stats);
+		}//end if
+		stats.averageDepth = stats.leaves == 0 ? 0 : stats.averageDepth / stats.leaves;
+		stats.chainLengths[0] = stats.leaves;
+		
+		stats.nodeBytes = (long) (stats.nodes+1) * TrieStats.NODE_BYTES;
+		stats.indexesBytes = (long) stats.nodes * TrieStats.INDEXES_BYTES;
+		stats.wordsBytes = TrieStats.align(16 + 4L * words.size()) + 24;
+		for (String word : words) {
+			stats.wordsBytes += TrieStats.stringBytes(word);
+		}//end for
+		
+		stats.completionQueries = completionQueries;
+		stats.completionNodesVisited = completionNodesVisited;
+		return stats;
+	}//end stats
+	
+	/**
+	 * Adds the sibling chain starting at ptr, at the given depth, and everything below it to stats.
+	 * Average depth is accumulated as a sum of leaf depths.
+	 */
+	private static void stats(TrieNode ptr, int depth, TrieStats stats) {
+		int chain = 0;
+		for (; ptr != null; ptr = ptr.sibling) {
+			chain++;
+			stats.nodes++;
+			if (ptr.firstChild == null) {
+				stats.leaves++;
+				stats.averageDepth += depth;
+				stats.maxDepth = Math.max(stats.maxDepth, depth);
+				stats.maxWordLength = Math.max(stats.maxWordLength, ptr.substr.endIndex+1);
+			}//end if
+			else {
+				stats(ptr.firstChild, depth+1, stats);
+			}//end else
+		}//end for
+		if (chain >= stats.chainLengths.length) {
+			stats.chainLengths = Arrays.copyOf(stats.chainLengths, chain+1);
+		}//end if
+		stats.chainLengths[chain]++;
+	}//end stats
+	
 	public void print() {
 		print(root, 1, words);
 	}
@@ -0,0 +1,250 @@
+package structures;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Benchmark driver for Trie. Builds tries from word lists shaped like English words, URLs and
+ * random keys, and reports build time, bytes allocated and retained per word, and completion
+ * latency and allocation for prefixes of length 1 to 4. Every measurement runs warm-up rounds
+ * first, so the numbers are steady-state and can be compared against an earlier run.
+ * <pre>
+ *     java structures.TrieBenchmark [number-of-words] [words-file]
+ * </pre>
+ * If a words file (one word per line, e.g. /usr/share/dict/words) is given, it is used as the
+ * English list, otherwise English-like words are generated from syllables.
+ * 
+ * @author Sesh Venugopal
+ *
+ */
+public class TrieBenchmark {
+	
+	static final int WARMUP_ROUNDS = 5;
+	
+	static final int MEASURED_ROUNDS = 10;
+	
+	static final int QUERIES = 2000;
+	
+	/**
+	 * Keeps results alive so the JIT cannot drop the measured work.
+	 */
+	static volatile Object sink;
+	
+	static final com.sun.management.ThreadMXBean threads = allocationBean();
+	
+	public static void main(String[] args) throws IOException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		Random rand = new Random(112);
+		
+		ArrayList<String> english = args.length > 1 ? readWords(args[1], n) : englishWords(rand, n);
+		run("english", english, rand);
+		run("urls", urls(rand, n), rand);
+		run("random", randomKeys(rand, n), rand);
+	}
+	
+	/**
+	 * Runs all measurements on one word list and prints one line per measurement.
+	 */
+	static void run(String name, ArrayList<String> list, Random rand) {
+		//build
+		long allocated = 0;
+		long buildNanos = 0;
+		for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+			long a = allocatedBytes();
+			long t = System.nanoTime();
+			Trie trie = build(list);
+			long elapsed = System.nanoTime() - t;
+			sink = trie;
+			if (round >= WARMUP_ROUNDS) {
+				buildNanos += elapsed;
+				allocated += allocatedBytes() - a;
+			}//end if
+		}//end for
+		report(name, "build", "ns/word", (double) buildNanos / MEASURED_ROUNDS / list.size(), 
+				(double) allocated / MEASURED_ROUNDS / list.size());
+		
+		Trie trie = retained(name, list);
+		
+		//completion, full list and first result only
+		for (int len = 1; len <= 4; len++) {
+			String[] prefixes = prefixes(list, rand, len);
+			completion(name, "completionList/" + len, trie, prefixes, false);
+			completion(name, "first/" + len, trie, prefixes, true);
+		}//end for
+	}
+	
+	static Trie build(ArrayList<String> list) {
+		Trie trie = new Trie();
+		for (String word : list) {
+			trie.insertWord(word);
+		}//end for
+		return trie;
+	}
+	
+	/**
+	 * Measures the heap retained by a trie, not counting the word strings themselves, in bytes
+	 * per word, and returns the trie.
+	 */
+	static Trie retained(String name, ArrayList<String> list) {
+		Runtime rt = Runtime.getRuntime();
+		sink = build(list);
+		long with = usedAfterGc(rt);
+		sink = null;
+		long without = usedAfterGc(rt);
+		report(name, "retained", "bytes/word", (double) (with - without) / list.size(), -1);
+		return build(list);
+	}
+	
+	static void completion(String name, String what, Trie trie, String[] prefixes, boolean firstOnly) {
+		long nanos = 0, bytes = 0;
+		for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+			long a = allocatedBytes();
+			long t = System.nanoTime();
+			for (String prefix : prefixes) {
+				if (firstOnly) {
+					Iterator<String> it = trie.completions(prefix);
+					sink = it.hasNext() ? it.next() : null;
+				}//end if
+				else {
+					sink = trie.completionList(prefix);
+				}//end else
+			}//end for
+			long elapsed = System.nanoTime() - t;
+			if (round >= WARMUP_ROUNDS) {
+				nanos += elapsed;
+				bytes += allocatedBytes() - a;
+			}//end if
+		}//end for
+		long ops = (long) MEASURED_ROUNDS * prefixes.length;
+		report(name, what, "ns/op", (double) nanos / ops, (double) bytes / ops);
+	}
+	
+	static void report(String list, String what, String unit, double value, double bytes) {
+		String allocated = bytes < 0 ? "" : String.format("  %12.1f bytes allocated", bytes);
+		System.out.println(String.format("%-8s %-18s %14.1f %-10s%s", list, what, value, unit, allocated));
+	}
+	
+	/**
+	 * Picks prefixes of the given length from words in the list, so most of them have completions.
+	 */
+	static String[] prefixes(ArrayList<String> list, Random rand, int len) {
+		String[] prefixes = new String[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			String word = list.get(rand.nextInt(list.size()));
+			prefixes[i] = word.substring(0, Math.min(len, word.length()));
+		}//end for
+		return prefixes;
+	}
+	
+	static ArrayList<String> readWords(String file, int max) throws IOException {
+		ArrayList<String> list = new ArrayList<String>();
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line;
+			while (list.size() < max && (line = br.readLine()) != null) {
+				line = line.trim().toLowerCase();
+				if (line.length() > 0) {
+					list.add(line);
+				}//end if
+			}//end while
+		}//end try
+		return list;
+	}
+	
+	static final String[] ONSETS = {"", "b", "c", "d", "f", "g", "h", "l", "m", "n", "p", "r", "s", "t", "w",
+			"br", "ch", "cl", "pr", "sh", "st", "th", "tr"};
+	
+	static final String[] VOWELS = {"a", "e", "i", "o", "u", "ea", "ou", "ai", "ee"};
+	
+	static final String[] CODAS = {"", "", "n", "r", "s", "t", "l", "ng", "ck", "nd", "st"};
+	
+	static final String[] SUFFIXES = {"", "", "", "s", "ed", "ing", "er", "ly", "tion", "ness"};
+	
+	static ArrayList<String> englishWords(Random rand, int n) {
+		ArrayList<String> list = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++) {
+			StringBuilder sb = new StringBuilder();
+			int syllables = 1 + rand.nextInt(3);
+			for (int s = 0; s < syllables; s++) {
+				sb.append(pick(ONSETS, rand)).append(pick(VOWELS, rand)).append(pick(CODAS, rand));
+			}//end for
+			list.add(sb.append(pick(SUFFIXES, rand)).toString());
+		}//end for
+		return list;
+	}
+	
+	static ArrayList<String> urls(Random rand, int n) {
+		String[] hosts = new String[n/100 + 1];
+		for (int i = 0; i < hosts.length; i++) {
+			hosts[i] = "https://" + (rand.nextBoolean() ? "www." : "") + randomString(rand, 4 + rand.nextInt(8)) 
+					+ (rand.nextBoolean() ? ".com" : ".org");
+		}//end for
+		ArrayList<String> list = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++) {
+			StringBuilder sb = new StringBuilder(pick(hosts, rand));
+			int segments = 1 + rand.nextInt(4);
+			for (int s = 0; s < segments; s++) {
+				sb.append('/').append(randomString(rand, 2 + rand.nextInt(9)));
+			}//end for
+			list.add(sb.toString());
+		}//end for
+		return list;
+	}
+	
+	static ArrayList<String> randomKeys(Random rand, int n) {
+		ArrayList<String> list = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++) {
+			list.add(randomString(rand, 8 + rand.nextInt(9)));
+		}//end for
+		return list;
+	}
+	
+	static String randomString(Random rand, int len) {
+		StringBuilder sb = new StringBuilder(len);
+		for (int i = 0; i < len; i++) {
+			int c = rand.nextInt(36);
+			sb.append((char) (c < 26 ? 'a' + c : '0' + c - 26));
+		}//end for
+		return sb.toString();
+	}
+	
+	static String pick(String[] choices, Random rand) {
+		return choices[rand.nextInt(choices.length)];
+	}
+	
+	static long usedAfterGc(Runtime rt) {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}//end for
+		return rt.totalMemory() - rt.freeMemory();
+	}
+	
+	/**
+	 * Returns the bytes allocated so far by this thread, or 0 if the JVM cannot tell.
+	 */
+	static long allocatedBytes() {
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/**
+	 * Returns the JVM's per-thread allocation counter, switched on, or null if it has none.
+	 * This is the same as ExpressionProfiler.allocationBean in apps. The two are kept apart on
+	 * purpose: Trie and Expression are built as separate assignments, neither on the classpath
+	 * of the other, so a shared helper would have to become public API of one of them.
+	 */
+	static com.sun.management.ThreadMXBean allocationBean() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}//end if
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!bean.isThreadAllocatedMemorySupported()) {
+			return null;
+		}//end if
+		bean.setThreadAllocatedMemoryEnabled(true);
+		return bean;
+	}
+}
@@ -0,0 +1,153 @@
+package structures;
+
+/**
+ * This class holds the shape of a Trie at the time Trie.stats() was called. Memory figures are
+ * estimates for a 64-bit JVM with compressed references: 12 byte object headers, 4 byte
+ * references, objects padded to 8 bytes, and strings stored one byte per character.
+ * 
+ * @author Sesh Venugopal
+ *
+ */
+public class TrieStats {
+	
+	/**
+	 * Estimated size of a TrieNode: header and three references.
+	 */
+	static final int NODE_BYTES = 24;
+	
+	/**
+	 * Estimated size of an Indexes: header, an int and two shorts.
+	 */
+	static final int INDEXES_BYTES = 24;
+	
+	/**
+	 * Number of entries in the words list, including words inserted more than once.
+	 */
+	public int words;
+	
+	/**
+	 * Number of nodes, not counting the root.
+	 */
+	public int nodes;
+	
+	/**
+	 * Number of leaves. Each distinct word ends at a leaf, or at an empty-edge leaf
+	 * when it is a prefix of other words.
+	 */
+	public int leaves;
+	
+	/**
+	 * Average number of nodes from the root to a leaf.
+	 */
+	public double averageDepth;
+	
+	/**
+	 * Largest number of nodes from the root to a leaf.
+	 */
+	public int maxDepth;
+	
+	/**
+	 * Length of the longest word, in characters.
+	 */
+	public int maxWordLength;
+	
+	/**
+	 * Histogram of sibling chain lengths: chainLengths[k] is the number of nodes (the root
+	 * included) that have exactly k children. insertWord walks one chain per level, so long
+	 * chains make it slow.
+	 */
+	public int[] chainLengths;
+	
+	/**
+	 * Estimated bytes used by TrieNode objects, the root included.
+	 */
+	public long nodeBytes;
+	
+	/**
+	 * Estimated bytes used by Indexes objects.
+	 */
+	public long indexesBytes;
+	
+	/**
+	 * Estimated bytes used by the words list and its strings.
+	 */
+	public long wordsBytes;
+	
+	/**
+	 * Number of completion queries run since the trie was created, exact and fuzzy.
+	 */
+	public long completionQueries;
+	
+	/**
+	 * Number of nodes visited by those completion queries.
+	 */
+	public long completionNodesVisited;
+	
+	TrieStats() {
+	}
+	
+	/**
+	 * Returns the estimated total bytes used by the trie.
+	 * 
+	 * @return Sum of node, indexes and words estimates
+	 */
+	public long totalBytes() {
+		return nodeBytes + indexesBytes + wordsBytes;
+	}
+	
+	/**
+	 * Returns the average number of nodes visited per completion query.
+	 * 
+	 * @return Nodes visited per query, 0 if there were no queries
+	 */
+	public double nodesPerQuery() {
+		return completionQueries == 0 ? 0 : (double) completionNodesVisited / completionQueries;
+	}
+	
+	/**
+	 * Returns the average number of nodes in a sibling chain, over the nodes that have children.
+	 * 
+	 * @return Average fan-out of inner nodes
+	 */
+	public double averageFanOut() {
+		long chains = 0, total = 0;
+		for (int k = 1; k < chainLengths.length; k++) {
+			chains += chainLengths[k];
+			total += (long) k * chainLengths[k];
+		}//end for
+		return chains == 0 ? 0 : (double) total / chains;
+	}
+	
+	static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+	
+	/**
+	 * Estimated size of a string and its byte array.
+	 */
+	static long stringBytes(String s) {
+		return 24 + align(16 + s.length());
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("words: ").append(words).append(", nodes: ").append(nodes).append(", leaves: ").append(leaves).append('\n');
+		sb.append("depth: average ").append(String.format("%.2f", averageDepth)).append(", max ").append(maxDepth)
+			.append(", longest word ").append(maxWordLength).append('\n');
+		sb.append("fan-out: average ").append(String.format("%.2f", averageFanOut())).append(", chains");
+		for (int k = 1; k < chainLengths.length; k++) {
+			if (chainLengths[k] != 0) {
+				sb.append(' ').append(k).append(':').append(chainLengths[k]);
+			}//end if
+		}//end for
+		sb.append('\n');
+		sb.append("memory: nodes ").append(nodeBytes).append(", indexes ").append(indexesBytes)
+			.append(", words ").append(wordsBytes).append(", total ").append(totalBytes()).append(" bytes\n");
+		sb.append("completion: ").append(completionQueries).append(" queries, ")
+			.append(String.format("%.1f", nodesPerQuery())).append(" nodes per query");
+		return sb.toString();
+	}
+}
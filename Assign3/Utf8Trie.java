@@ -0,0 +1,320 @@
+package structures;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class implements a compressed trie over the UTF-8 bytes of its words. It is laid out like
+ * Trie, with first child and sibling links, but edges are ranges of bytes with int offsets, so
+ * there is no limit on word length, where Trie's short offsets stop at Short.MAX_VALUE characters.
+ * A character outside ASCII takes two to four bytes of an edge.
+ * Siblings are kept in unsigned byte order, which is code point order, so completions come
+ * out sorted by code point, where comparing UTF-16 units would put supplementary characters
+ * before some others.
+ * 
+ * @author Sesh Venugopal
+ *
+ */
+public class Utf8Trie {
+	
+	/**
+	 * This class implements a node of the byte trie. The edge into the node is
+	 * keys[wordIndex][startIndex..endIndex].
+	 */
+	static class Node {
+		
+		/**
+		 * Index of the word whose bytes hold this node's edge.
+		 */
+		int wordIndex;
+		
+		/**
+		 * Offset of the first byte of the edge.
+		 */
+		int startIndex;
+		
+		/**
+		 * Offset of the last byte of the edge. An edge with endIndex < startIndex is empty,
+		 * and marks a word that is a prefix of other words.
+		 */
+		int endIndex;
+		
+		/**
+		 * First child of this node.
+		 */
+		Node firstChild;
+		
+		/**
+		 * Next sibling of this node.
+		 */
+		Node sibling;
+		
+		Node(int wordIndex, int startIndex, int endIndex, Node firstChild, Node sibling) {
+			this.wordIndex = wordIndex;
+			this.startIndex = startIndex;
+			this.endIndex = endIndex;
+			this.firstChild = firstChild;
+			this.sibling = sibling;
+		}
+		
+		public String toString() {
+			return "(" + wordIndex + "," + startIndex + "," + endIndex + ")";
+		}
+	}
+	
+	/**
+	 * Words indexed by this trie.
+	 */
+	ArrayList<String> words;
+	
+	/**
+	 * UTF-8 bytes of the words, keys.get(i) for words.get(i).
+	 */
+	ArrayList<byte[]> keys;
+	
+	/**
+	 * Root node of this trie, with no edge.
+	 */
+	Node root;
+	
+	/**
+	 * Encoder that rejects unpaired surrogates instead of replacing them.
+	 */
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+	
+	/**
+	 * Initializes an empty byte trie.
+	 */
+	public Utf8Trie() {
+		root = new Node(-1, 0, -1, null, null);
+		words = new ArrayList<String>();
+		keys = new ArrayList<byte[]>();
+	}
+	
+	/**
+	 * Returns the number of distinct words in this trie.
+	 * 
+	 * @return Number of words
+	 */
+	public int size() {
+		return words.size();
+	}
+	
+	/**
+	 * Inserts a word into this trie. A word may be a prefix of another word, and inserting
+	 * a word that is already in the trie does nothing.
+	 * 
+	 * @param word Word to be inserted.
+	 * @throws IllegalArgumentException If the word is not well-formed UTF-16, i.e. has an unpaired surrogate
+	 */
+	public void insertWord(String word) {
+		byte[] key = encode(word);
+		int wordIndex = words.size();
+		
+		Node parent = root;
+		Node prev = null;
+		Node ptr = root.firstChild;
+		int startDex = 0;
+		while (ptr != null) {
+			byte[] curr = keys.get(ptr.wordIndex);
+			int endDex = ptr.endIndex;
+			
+			int i = startDex;
+			while (i <= endDex && i < key.length && key[i] == curr[i]) {
+				i++;
+			}//end while
+			
+			if (i == startDex && !(i > endDex && i == key.length)) {
+				// sibling, kept in unsigned byte order
+				if (edgeByte(key, i, key.length-1) < edgeByte(curr, i, endDex)) {
+					link(parent, prev, new Node(wordIndex, startDex, key.length-1, null, null));
+					add(word, key);
+					return;
+				}//end if
+				prev = ptr;
+				ptr = ptr.sibling;
+			}//end if
+			else if (i > endDex && ptr.firstChild != null) {
+				//whole edge matched, continue with the children
+				startDex = i;
+				parent = ptr;
+				prev = null;
+				ptr = ptr.firstChild;
+			}//end else if
+			else if (i > endDex && i == key.length) {
+				//word is already in the trie
+				return;
+			}//end else if
+			else {
+				//split the edge, the old tail keeps the old children
+				Node tail = new Node(ptr.wordIndex, i, endDex, ptr.firstChild, null);
+				Node n = new Node(wordIndex, i, key.length-1, null, null);
+				ptr.endIndex = i-1;
+				if (edgeByte(key, i, key.length-1) < edgeByte(curr, i, endDex)) {
+					n.sibling = tail;
+					ptr.firstChild = n;
+				}//end if
+				else {
+					tail.sibling = n;
+					ptr.firstChild = tail;
+				}//end else
+				add(word, key);
+				return;
+			}//end else
+		}//end while
+		
+		//ran off the end of a sibling chain
+		link(parent, prev, new Node(wordIndex, startDex, key.length-1, null, null));
+		add(word, key);
+	}//end insertWord
+	
+	/**
+	 * Tells whether a word is in this trie.
+	 * 
+	 * @param word Word to look up
+	 * @return True if the word was inserted, false otherwise
+	 */
+	public boolean contains(String word) {
+		byte[] key = encode(word);
+		Node ptr = locus(key);
+		if (ptr == null || ptr.endIndex+1 != key.length) {
+			return false;
+		}//end if
+		if (ptr.firstChild == null) {
+			return ptr != root;
+		}//end if
+		//a word that is a prefix of others ends in an empty edge, which sorts first
+		return ptr.firstChild.startIndex > ptr.firstChild.endIndex;
+	}
+	
+	/**
+	 * Given a string prefix, returns all the words in the trie that start with this prefix,
+	 * in code point order.
+	 * 
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return List of all words in tree that start with the prefix.
+	 *         If there is no word in the tree that has this prefix, the list is empty.
+	 */
+	public ArrayList<String> completionList(String prefix) {
+		ArrayList<String> list = new ArrayList<String>();
+		Node ptr = locus(encode(prefix));
+		if (ptr != null && (ptr != root || root.firstChild != null)) {
+			collectWords(ptr, list);
+		}//end if
+		return list;
+	}//end completionList
+	
+	/**
+	 * Returns the node whose path covers the key bytes, the root for an empty key,
+	 * or null if no word starts with the key.
+	 */
+	private Node locus(byte[] key) {
+		if (key.length == 0) {
+			return root;
+		}//end if
+		Node ptr = root.firstChild;
+		int depth = 0;
+		while (ptr != null) {
+			byte[] curr = keys.get(ptr.wordIndex);
+			if (ptr.startIndex > ptr.endIndex || curr[depth] != key[depth]) {
+				ptr = ptr.sibling;
+				continue;
+			}//end if
+			int end = Math.min(ptr.endIndex+1, key.length);
+			for (int i = depth+1; i < end; i++) {
+				if (curr[i] != key[i]) {
+					return null;
+				}//end if
+			}//end for
+			if (end == key.length) {
+				return ptr;
+			}//end if
+			depth = end;
+			ptr = ptr.firstChild;
+		}//end while
+		return null;
+	}//end locus
+	
+	/**
+	 * Adds the words of all the leaves under the given node, including the node itself, to the list.
+	 */
+	private void collectWords(Node node, ArrayList<String> list) {
+		if (node.firstChild == null) {
+			list.add(words.get(node.wordIndex));
+			return;
+		}//end if
+		for (Node ptr = node.firstChild; ptr != null; ptr = ptr.sibling) {
+			collectWords(ptr, list);
+		}//end for
+	}
+	
+	private void add(String word, byte[] key) {
+		words.add(word);
+		keys.add(key);
+	}
+	
+	/**
+	 * Links n into the children of parent, right after prev, or first if prev is null.
+	 */
+	private static void link(Node parent, Node prev, Node n) {
+		if (prev == null) {
+			n.sibling = parent.firstChild;
+			parent.firstChild = n;
+		}//end if
+		else {
+			n.sibling = prev.sibling;
+			prev.sibling = n;
+		}//end else
+	}
+	
+	/**
+	 * Returns the first byte of the edge key[start..end] as an unsigned value,
+	 * or -1 if the edge is empty so that empty edges sort before all others.
+	 */
+	private static int edgeByte(byte[] key, int start, int end) {
+		return start > end ? -1 : key[start] & 0xff;
+	}
+	
+	private byte[] encode(String word) {
+		try {
+			ByteBuffer buf = encoder.encode(CharBuffer.wrap(word));
+			return Arrays.copyOf(buf.array(), buf.limit());
+		} catch (CharacterCodingException e) {
+			throw new IllegalArgumentException("Not a well-formed word: " + word, e);
+		}
+	}
+	
+	public void print() {
+		print(root, 1);
+	}
+	
+	private void print(Node root, int indent) {
+		for (int i=0; i < indent-1; i++) {
+			System.out.print("    ");
+		}
+		if (root.wordIndex >= 0) {
+			System.out.println("      " + words.get(root.wordIndex));
+		}
+		for (int i=0; i < indent-1; i++) {
+			System.out.print("    ");
+		}
+		System.out.print(" ---");
+		System.out.println(root == this.root ? "(null)" : "(" + root + ")");
+		
+		for (Node ptr=root.firstChild; ptr != null; ptr=ptr.sibling) {
+			for (int i=0; i < indent-1; i++) {
+				System.out.print("    ");
+			}
+			System.out.println("     |");
+			print(ptr, indent+1);
+		}
+	}
+}